@@ -0,0 +1,105 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalUserServiceTestConfig;
+import com.google.sps.data.CommentSearch;
+import com.google.sps.data.HotScore;
+import com.google.sps.data.Stores;
+
+/** Runs the benchmarks against the in-process Datastore and Users service stubs */
+final class BenchmarkEnvironment {
+
+    // Id of the registered user the benchmarks log in as.
+    static final String USER_ID = "benchmark-user";
+
+    private final LocalServiceTestHelper helper;
+
+    // Creates the environment with a logged out viewer, or with the registered benchmark user logged in.
+    BenchmarkEnvironment(boolean loggedIn) {
+        Map<String, Object> attributes = new HashMap<String, Object>();
+        attributes.put("com.google.appengine.api.users.UserService.user_id_key", USER_ID);
+
+        // Apply every write right away, so that queries see the comments that were just added.
+        helper = new LocalServiceTestHelper(
+                new LocalDatastoreServiceTestConfig().setNoStorage(true).setApplyAllHighRepJobPolicy(),
+                new LocalUserServiceTestConfig())
+                .setEnvIsLoggedIn(loggedIn)
+                .setEnvEmail("benchmark@example.com")
+                .setEnvAuthDomain("example.com")
+                .setEnvAttributes(attributes);
+    }
+
+    // Selects the storage engine and starts the stubs. Must be called before anything reads Stores.
+    void setUp(String engine) {
+        System.setProperty("sps.storage.engine", engine);
+        helper.setUp();
+    }
+
+    void tearDown() {
+        helper.tearDown();
+    }
+
+    // Stores count comments through the selected engine.
+    void addComments(int count) {
+        for (int i = 0; i < count; i++) {
+            Stores.comments().add(createComment(i));
+        }
+    }
+
+    // Returns a comment entity like the ones DataServlet creates, without storing it.
+    static Entity createComment(int i) {
+        Entity commentEntity = new Entity("Comment");
+        commentEntity.setProperty("content", "Comment number " + i + " about the projects on this portfolio");
+        commentEntity.setProperty("time", 1590000000000L + i * 1000L);
+        commentEntity.setProperty("thumbsup", (long) (i % 7));
+        commentEntity.setProperty("thumbsdown", (long) (i % 3));
+        commentEntity.setProperty("popularity", (long) (i % 7 - i % 3));
+        commentEntity.setProperty("hot", HotScore.compute(i % 7, i % 3, 1590000000000L + i * 1000L));
+        commentEntity.setProperty("name", "Visitor " + (i % 50));
+        commentEntity.setProperty("email", "visitor" + (i % 50) + "@example.com");
+        commentEntity.setProperty("username", "visitor" + (i % 50));
+        CommentSearch.index(commentEntity);
+        return commentEntity;
+    }
+
+    // Returns a comment entity with a complete key, which Comment needs for its id.
+    static Entity createStoredComment(int i) {
+        Entity commentEntity = new Entity("Comment", i + 1);
+        commentEntity.setPropertiesFrom(createComment(i));
+        return commentEntity;
+    }
+
+    /** Throws away everything written to it, so that serialization is measured without the cost of keeping it */
+    static final class DiscardingWriter extends Writer {
+        @Override
+        public void write(char[] buffer, int offset, int length) {}
+
+        @Override
+        public void write(String text, int offset, int length) {}
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public void close() {}
+    }
+}
@@ -0,0 +1,66 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import com.google.appengine.api.datastore.Entity;
+import com.google.sps.data.Comment;
+
+/** Cost of turning a page of Comment entities into Comment objects */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CommentMappingBenchmark {
+
+    @Param({"10", "100"})
+    private int pageSize;
+
+    private final BenchmarkEnvironment environment = new BenchmarkEnvironment(false);
+    private List<Entity> entities;
+
+    @Setup
+    public void setUp() {
+        environment.setUp("datastore");
+        entities = new ArrayList<Entity>();
+        for (int i = 0; i < pageSize; i++) {
+            entities.add(BenchmarkEnvironment.createStoredComment(i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        environment.tearDown();
+    }
+
+    @Benchmark
+    public List<Comment> mapPage() {
+        List<Comment> comments = new ArrayList<Comment>();
+        for (Entity entity : entities) {
+            comments.add(new Comment(entity));
+        }
+        return comments;
+    }
+}
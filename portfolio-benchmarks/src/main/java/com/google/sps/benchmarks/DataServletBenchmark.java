@@ -0,0 +1,128 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import com.google.appengine.api.datastore.Entity;
+import com.google.sps.data.FirstPageCache;
+import com.google.sps.data.Stores;
+import com.google.sps.data.TranslationCache;
+import com.google.sps.data.UserInfoRepository;
+import com.google.sps.servlets.DataServlet;
+
+/**
+ * Cost of a whole GET /data, from reading the viewer's settings to writing the JSON page, against the in-process
+ * stubs. The translations are cached up front, so the Translation API is never called. The hits and misses of the
+ * first page cache are reported along with the timings.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DataServletBenchmark {
+
+    private static final int COMMENTS = 200;
+    private static final int MAX = 10;
+
+    @Param({"datastore", "memory"})
+    private String engine;
+
+    // Whether the page is read by a logged out visitor or by a registered user, whose votes are read too.
+    @Param({"false", "true"})
+    private boolean loggedIn;
+
+    // Whether a vote on the first page is cast before every read, like on a page that is being voted on.
+    @Param({"false", "true"})
+    private boolean voting;
+
+    private BenchmarkEnvironment environment;
+    private final DataServlet servlet = new DataServlet();
+    private HttpServletRequest request;
+    private HttpServletResponse response;
+    private long votedId;
+
+    /** First page cache lookups made by the measured reads, which JMH reports next to the timings */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class CacheCounters {
+        public long cacheHits;
+        public long cacheMisses;
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        environment = new BenchmarkEnvironment(loggedIn);
+        environment.setUp(engine);
+        environment.addComments(COMMENTS);
+
+        Entity userInfoEntity = UserInfoRepository.createDefault();
+        if (loggedIn) {
+            userInfoEntity = new Entity(UserInfoRepository.getKey(BenchmarkEnvironment.USER_ID));
+            userInfoEntity.setPropertiesFrom(UserInfoRepository.createDefault());
+            userInfoEntity.setProperty("id", BenchmarkEnvironment.USER_ID);
+            userInfoEntity.setProperty("name", "Benchmark");
+            userInfoEntity.setProperty("username", "benchmark");
+            Stores.users().put(userInfoEntity);
+        }
+
+        // Cache the English translation of the first page.
+        Map<Long, String> contents = new HashMap<Long, String>();
+        for (Entity commentEntity : Stores.comments().fetch(userInfoEntity, null, MAX).getEntities()) {
+            contents.put(commentEntity.getKey().getId(), (String) commentEntity.getProperty("content"));
+            votedId = commentEntity.getKey().getId();
+        }
+        TranslationCache.putAllInMemory(contents, contents, "en");
+
+        request = mock(HttpServletRequest.class);
+        response = mock(HttpServletResponse.class);
+        when(response.getWriter()).thenReturn(new PrintWriter(new BenchmarkEnvironment.DiscardingWriter()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        environment.tearDown();
+    }
+
+    @Benchmark
+    public void doGet(CacheCounters counters) throws IOException {
+        if (voting) {
+            Stores.comments().vote(BenchmarkEnvironment.USER_ID, votedId, true);
+        }
+
+        long hits = FirstPageCache.getHits();
+        long misses = FirstPageCache.getMisses();
+        servlet.doGet(request, response);
+        counters.cacheHits += FirstPageCache.getHits() - hits;
+        counters.cacheMisses += FirstPageCache.getMisses() - misses;
+    }
+}
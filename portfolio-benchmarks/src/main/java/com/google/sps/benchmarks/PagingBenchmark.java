@@ -0,0 +1,78 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import com.google.appengine.api.datastore.Entity;
+import com.google.sps.data.CommentStore;
+import com.google.sps.data.Stores;
+import com.google.sps.data.UserInfoRepository;
+
+/**
+ * Cost of jumping to a page that was never visited, which skips over every page before it ten comments at a time and
+ * then reads the page itself, the way the preferences update finds the cursor of a page.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PagingBenchmark {
+
+    private static final int MAX = 10;
+
+    @Param({"datastore", "memory"})
+    private String engine;
+
+    @Param({"recent", "top"})
+    private String filter;
+
+    @Param({"1", "10", "100"})
+    private int page;
+
+    private final BenchmarkEnvironment environment = new BenchmarkEnvironment(false);
+    private Entity userInfoEntity;
+
+    @Setup
+    public void setUp() {
+        environment.setUp(engine);
+        environment.addComments(MAX * page + MAX);
+        userInfoEntity = UserInfoRepository.createDefault();
+        userInfoEntity.setProperty("filter", filter);
+    }
+
+    @TearDown
+    public void tearDown() {
+        environment.tearDown();
+    }
+
+    @Benchmark
+    public List<Entity> jumpToPage() {
+        CommentStore comments = Stores.comments();
+        String cursor = null;
+        for (int i = 1; i < page; i++) {
+            cursor = comments.skip(userInfoEntity, cursor, MAX);
+        }
+        return comments.fetch(userInfoEntity, cursor, MAX).getEntities();
+    }
+}
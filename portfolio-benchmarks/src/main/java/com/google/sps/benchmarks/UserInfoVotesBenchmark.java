@@ -0,0 +1,89 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.sps.data.UserInfo;
+
+/** Cost of the lookups in the legacy liked and unliked lists of a UserInfo entity, which grow with every vote */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UserInfoVotesBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int votes;
+
+    private final BenchmarkEnvironment environment = new BenchmarkEnvironment(false);
+    private Entity userInfoEntity;
+    private UserInfo userInfo;
+    private Key lastLiked;
+    private Key notLiked;
+
+    @Setup
+    public void setUp() {
+        environment.setUp("datastore");
+
+        List<Key> liked = new ArrayList<Key>();
+        List<Key> unliked = new ArrayList<Key>();
+        for (int i = 0; i < votes; i++) {
+            liked.add(KeyFactory.createKey("Comment", 2 * i + 1));
+            unliked.add(KeyFactory.createKey("Comment", 2 * i + 2));
+        }
+        lastLiked = liked.get(liked.size() - 1);
+        notLiked = KeyFactory.createKey("Comment", 4 * votes + 1);
+
+        userInfoEntity = new Entity("UserInfo", BenchmarkEnvironment.USER_ID);
+        userInfoEntity.setProperty("max", 10L);
+        userInfoEntity.setProperty("page", 1L);
+        userInfoEntity.setProperty("liked", liked);
+        userInfoEntity.setProperty("unliked", unliked);
+        userInfo = new UserInfo(userInfoEntity);
+    }
+
+    @TearDown
+    public void tearDown() {
+        environment.tearDown();
+    }
+
+    @Benchmark
+    public UserInfo mapUserInfo() {
+        return new UserInfo(userInfoEntity);
+    }
+
+    @Benchmark
+    public boolean isLikedHit() {
+        return userInfo.isLikedComment(lastLiked);
+    }
+
+    @Benchmark
+    public boolean isLikedMiss() {
+        return userInfo.isLikedComment(notLiked) || userInfo.isUnlikedComment(notLiked);
+    }
+}
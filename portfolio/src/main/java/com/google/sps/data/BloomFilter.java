@@ -0,0 +1,113 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter of strings. It never answers false for a string that was put in, and answers true for a string that
+ * was not with roughly the false positive rate it was sized for. Bits are set with compare-and-set, so it can be read
+ * and written from any number of threads without locking.
+ */
+final class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long numBits;
+    private final int numHashes;
+
+    // Sizes the filter so that once it holds expectedInsertions strings, a string that was not put in is reported as
+    // present with about the given probability.
+    BloomFilter(int expectedInsertions, double falsePositiveRate) {
+        double ln2 = Math.log(2);
+        long optimalBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (ln2 * ln2));
+        this.bits = new AtomicLongArray((int) ((optimalBits + 63) / 64));
+        this.numBits = bits.length() * 64L;
+        this.numHashes = Math.max(1, (int) Math.round((double) numBits / expectedInsertions * ln2));
+    }
+
+    private BloomFilter(AtomicLongArray bits, int numHashes) {
+        this.bits = bits;
+        this.numBits = bits.length() * 64L;
+        this.numHashes = numHashes;
+    }
+
+    // Reads back a filter written by toBytes with the same number of hashes.
+    static BloomFilter fromBytes(byte[] bytes, int numHashes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        AtomicLongArray bits = new AtomicLongArray(bytes.length / 8);
+        for (int i = 0; i < bits.length(); i++) {
+            bits.set(i, buffer.getLong());
+        }
+        return new BloomFilter(bits, numHashes);
+    }
+
+    byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(bits.length() * 8);
+        for (int i = 0; i < bits.length(); i++) {
+            buffer.putLong(bits.get(i));
+        }
+        return buffer.array();
+    }
+
+    int getNumHashes() {
+        return numHashes;
+    }
+
+    void put(String value) {
+        long hash = hash(value);
+        for (int i = 0; i < numHashes; i++) {
+            long bit = index(hash, i);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            do {
+                current = bits.get(word);
+            } while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    boolean mightContain(String value) {
+        long hash = hash(value);
+        for (int i = 0; i < numHashes; i++) {
+            long bit = index(hash, i);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Derives the i-th bit from the two halves of one 64 bit hash, which is as good as i independent hashes.
+    private long index(long hash, int i) {
+        int high = (int) (hash >>> 32);
+        int low = (int) hash;
+        return Math.floorMod(low + (long) i * high, numBits);
+    }
+
+    // 64 bit FNV-1a over the UTF-8 bytes, followed by a finalizer that spreads every input bit over the whole hash.
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,106 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process cache of the bootstrap response of every registered user, keyed by user id. Writes to the UserInfo entity
+ * through UserInfoRepository drop the user's entry right away, but nothing tells this instance about writes made on
+ * another one, so a response can be up to TTL_MILLIS (30 seconds) behind those.
+ */
+public final class BootstrapCache {
+
+    // How long a response is served from memory before the UserInfo entity is read again. This is also how long a
+    // write made on another instance can go unseen.
+    private static final long TTL_MILLIS = 30000;
+    // Maximum number of responses kept in memory before the least recently used one is evicted.
+    private static final int MAX_ENTRIES = 1000;
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong evictions = new AtomicLong();
+    // Access ordered, so that the eldest entry is the least recently used one. Guarded by itself.
+    private static final Map<String, CachedResponse> responses =
+            new LinkedHashMap<String, CachedResponse>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+            if (size() > MAX_ENTRIES) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private BootstrapCache() {}
+
+    private static final class CachedResponse {
+        private final String json;
+        private final long expiresAt;
+
+        private CachedResponse(String json, long expiresAt) {
+            this.json = json;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    // Returns the cached response of the user, or null if there is none or it expired. An expired response is dropped
+    // so that users who stopped visiting do not keep theirs in memory.
+    public static String get(String userId) {
+        CachedResponse cached;
+        synchronized (responses) {
+            cached = responses.get(userId);
+            if (cached != null && cached.expiresAt <= System.currentTimeMillis()) {
+                responses.remove(userId);
+                cached = null;
+            }
+        }
+
+        if (cached == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return cached.json;
+    }
+
+    public static void put(String userId, String json) {
+        CachedResponse cached = new CachedResponse(json, System.currentTimeMillis() + TTL_MILLIS);
+        synchronized (responses) {
+            responses.put(userId, cached);
+        }
+    }
+
+    public static void invalidate(String userId) {
+        synchronized (responses) {
+            responses.remove(userId);
+        }
+    }
+
+    public static long getHits() {
+        return hits.get();
+    }
+
+    public static long getMisses() {
+        return misses.get();
+    }
+
+    public static long getEvictions() {
+        return evictions.get();
+    }
+}
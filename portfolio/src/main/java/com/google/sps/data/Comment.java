@@ -14,33 +14,7 @@
 
 package com.google.sps.data;
 
-import java.io.IOException;
-import javax.servlet.annotation.WebServlet;
-import javax.servlet.http.HttpServlet;
-import javax.servlet.http.HttpServletRequest;
-import javax.servlet.http.HttpServletResponse;
-import java.util.ArrayList;
-import java.util.List;
-import com.google.gson.Gson;
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
-import com.google.sps.data.Comment;
-import com.google.appengine.api.datastore.PreparedQuery;
-import com.google.appengine.api.datastore.Query;
-import com.google.appengine.api.datastore.Query.SortDirection;
-import com.google.appengine.api.datastore.Key;
-import com.google.appengine.api.datastore.KeyFactory;
-import com.google.appengine.api.datastore.Query.FilterOperator;
-import com.google.appengine.api.datastore.Query.Filter;
-import com.google.appengine.api.datastore.Query.FilterPredicate;
-import com.google.appengine.api.users.UserService;
-import com.google.appengine.api.users.UserServiceFactory;
-import com.google.appengine.api.datastore.Transaction;
-import com.google.appengine.api.datastore.TransactionOptions;
-import com.google.cloud.translate.Translate;
-import com.google.cloud.translate.TranslateOptions;
-import com.google.cloud.translate.Translation;
 
 /** A comment on my portfolio */
 public final class Comment {
@@ -54,6 +28,9 @@ public final class Comment {
     private final String name;
     private final String email;
     private final String username;
+    private boolean translated;
+    private boolean liked;
+    private boolean unliked;
 
     public Comment(Entity commentEntity) {
         this.id = (long) commentEntity.getKey().getId();
@@ -67,59 +44,35 @@ public final class Comment {
         this.username = (String) commentEntity.getProperty("username");
     }
 
-     public void incrementThumbsup() {
-        this.thumbsup++;
+    public void setVotes(VoteCount votes) {
+        this.thumbsup = votes.getThumbsup();
+        this.thumbsdown = votes.getThumbsdown();
+        this.popularity = votes.getPopularity();
         return;
     }
 
-    public void decrementThumbsup() {
-        this.thumbsup--;
+    // Marks whether the user viewing the comment gave it a thumbs up or a thumbs down.
+    public void setViewerVote(boolean liked, boolean unliked) {
+        this.liked = liked;
+        this.unliked = unliked;
         return;
     }
 
-    public void incrementThumbsdown() {
-        this.thumbsdown++;
-        return;
-    }
-
-    public void decrementThumbsdown() {
-        this.thumbsdown--;
-        return;
+    public long getId() {
+        return this.id;
     }
 
-    public void incrementPopularity() {
-        this.popularity++;
-        return;
+    public String getContent() {
+        return this.content;
     }
 
-    public void decrementPopularity() {
-        this.popularity--;
-        return;
+    public boolean isTranslated() {
+        return this.translated;
     }
 
-    public void translateComment(String language) {
-        Translate translate = TranslateOptions.getDefaultInstance().getService();
-
-        try {
-            // Translate comment
-            Translation translation = translate.translate(this.content, Translate.TranslateOption.targetLanguage(language));
-            this.content = translation.getTranslatedText();
-            return;
-        } catch (RuntimeException e) {
-            return;
-        }
-    }
-
-    public void updateDatabase(Entity commentEntity, Transaction txn) {
-        DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-        // Update properties that can be changed.
-        commentEntity.setProperty("thumbsup", this.thumbsup);
-        commentEntity.setProperty("thumbsdown", this.thumbsdown);
-        commentEntity.setProperty("popularity", this.popularity);
-
-        // Add the updated entity back in the datastore
-        datastore.put(txn, commentEntity);
-
+    public void setTranslatedContent(String content) {
+        this.content = content;
+        this.translated = true;
         return;
     }
 }
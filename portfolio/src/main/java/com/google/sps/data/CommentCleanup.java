@@ -0,0 +1,61 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+
+/**
+ * Sweeps the votes and vote references of deleted comments in the background. Deleting a comment only removes the
+ * Comment entity, and a task queue task removes its Vote entities, its vote shards, its Translation entities and the
+ * keys still held in the old liked and unliked lists of UserInfo entities, a batch at a time.
+ */
+public final class CommentCleanup {
+
+    // URL of the task that sweeps after deleted comments, served by CleanupTaskServlet.
+    public static final String TASK_URL = "/tasks/cleanup";
+
+    // Number of votes, references and translations a single task removes before it hands the rest to a new task.
+    public static final int SWEEP_LIMIT = 500;
+
+    private CommentCleanup() {}
+
+    // Adds a task that sweeps after the deleted comments.
+    public static void enqueue(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        QueueFactory.getDefaultQueue().add(TaskOptions.Builder.withUrl(TASK_URL).param("ids", format(ids)));
+    }
+
+    public static String format(List<Long> ids) {
+        List<String> values = new ArrayList<String>();
+        for (long id : ids) {
+            values.add(Long.toString(id));
+        }
+        return String.join(",", values);
+    }
+
+    // Throws NumberFormatException if the ids are not a comma separated list of numbers.
+    public static List<Long> parse(String ids) {
+        List<Long> values = new ArrayList<Long>();
+        for (String id : ids.split(",")) {
+            values.add(Long.parseLong(id.trim()));
+        }
+        return values;
+    }
+}
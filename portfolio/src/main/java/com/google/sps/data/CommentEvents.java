@@ -0,0 +1,182 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+/**
+ * Log of the latest comment events: posted comments, deleted comments and changed vote counts. Posts, votes and
+ * deletes are served by any instance, so the log is kept in memcache where every instance sees it. Every event gets
+ * the next number of a global sequence, which is also its id, and EventsServlet sends the events after the id a client
+ * received last as server-sent events.
+ */
+public final class CommentEvents {
+
+    // Number of events a client can fall behind by before it is told to reload.
+    private static final int CAPACITY = 1024;
+    // How long an event is kept. Clients poll every few seconds, so they read it long before it expires.
+    private static final int EXPIRATION_SECONDS = 600;
+    private static final String SEQUENCE_KEY = "events:sequence";
+
+    // Gson is thread safe, so every event shares the same instance.
+    private static final Gson gson = new Gson();
+
+    private CommentEvents() {}
+
+    /** One event, with its sequence number, its type and its JSON data */
+    public static final class Event implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final long sequence;
+        private final String type;
+        private final String data;
+
+        private Event(long sequence, String type, String data) {
+            this.sequence = sequence;
+            this.type = type;
+            this.data = data;
+        }
+
+        public String getId() {
+            return Long.toString(sequence);
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getData() {
+            return data;
+        }
+    }
+
+    // Publishes a comment that was posted, with everything a client needs to show it.
+    public static void publishCreate(Comment comment) {
+        List<String[]> events = new ArrayList<String[]>();
+        events.add(new String[] {"create", gson.toJson(comment)});
+        publish(events);
+    }
+
+    // Publishes comments that were deleted.
+    public static void publishDelete(List<Long> ids) {
+        List<String[]> events = new ArrayList<String[]>();
+        for (long id : ids) {
+            JsonObject data = new JsonObject();
+            data.addProperty("id", id);
+            events.add(new String[] {"delete", data.toString()});
+        }
+        publish(events);
+    }
+
+    // Publishes the current thumbs up and thumbs down counts of comments that were voted on. Counts are sent instead of
+    // the change, so that an event applied twice or after a reload does no harm.
+    public static void publishVotes(Map<Long, VoteCount> counts) {
+        List<String[]> events = new ArrayList<String[]>();
+        for (Map.Entry<Long, VoteCount> count : counts.entrySet()) {
+            JsonObject data = new JsonObject();
+            data.addProperty("id", count.getKey());
+            data.addProperty("thumbsup", count.getValue().getThumbsup());
+            data.addProperty("thumbsdown", count.getValue().getThumbsdown());
+            events.add(new String[] {"votes", data.toString()});
+        }
+        publish(events);
+    }
+
+    // Returns the sequence number of the last event published, which is 0 before the first one.
+    public static long getLast() {
+        Long last = (Long) MemcacheServiceFactory.getMemcacheService().get(SEQUENCE_KEY);
+        return last == null ? 0 : last;
+    }
+
+    // Returns the sequence number in the id that a client received last, or -1 if the client has none.
+    public static long parseId(String id) {
+        if (id != null) {
+            try {
+                return Long.parseLong(id);
+            } catch (NumberFormatException e) {
+                // Treat it like a client without an id.
+            }
+        }
+        return -1;
+    }
+
+    // Returns the events published after the given sequence number up to the last one, oldest first, or null if the
+    // client cannot catch up: it fell too far behind, memcache lost some of the events, or memcache was flushed and
+    // the sequence started over. Events whose number was taken but that are not stored yet are left for the next poll.
+    public static List<Event> since(long sequence, long last) {
+        if (sequence > last || last - sequence > CAPACITY) {
+            return null;
+        }
+
+        List<String> keys = new ArrayList<String>();
+        for (long i = sequence + 1; i <= last; i++) {
+            keys.add(getKey(i));
+        }
+        Map<String, Object> stored = MemcacheServiceFactory.getMemcacheService().getAll(keys);
+
+        List<Event> events = new ArrayList<Event>();
+        for (String key : keys) {
+            Event event = (Event) stored.get(key);
+            if (event == null) {
+                break;
+            }
+            events.add(event);
+        }
+        // A missing event that is followed by stored ones was evicted rather than still being written.
+        if (events.size() < keys.size() && stored.size() > events.size()) {
+            return null;
+        }
+        return events;
+    }
+
+    // Takes a block of numbers from the global sequence and stores the events under them. Memcache calls do not
+    // throw, so a failure only means that clients miss the events and catch up on their next reload.
+    private static void publish(List<String[]> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+
+        MemcacheService memcache = MemcacheServiceFactory.getMemcacheService();
+        Long last = memcache.increment(SEQUENCE_KEY, events.size(), 0L);
+        if (last == null) {
+            return;
+        }
+
+        Map<String, Event> stored = new LinkedHashMap<String, Event>();
+        long sequence = last - events.size();
+        for (String[] event : events) {
+            sequence++;
+            stored.put(getKey(sequence), new Event(sequence, event[0], event[1]));
+        }
+        memcache.putAll(stored, Expiration.byDeltaSeconds(EXPIRATION_SECONDS));
+    }
+
+    private static String getKey(long sequence) {
+        return "events:" + sequence;
+    }
+}
@@ -0,0 +1,49 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.List;
+
+/** A page of comments together with the opaque cursors of its neighbouring pages */
+public final class CommentPage {
+
+    private final List<Comment> comments;
+    private final long page;
+    private final String prev;
+    private final String next;
+
+    public CommentPage(List<Comment> comments, long page, String prev, String next) {
+        this.comments = comments;
+        this.page = page;
+        this.prev = prev;
+        this.next = next;
+    }
+
+    public List<Comment> getComments() {
+        return comments;
+    }
+
+    public long getPage() {
+        return page;
+    }
+
+    public String getPrev() {
+        return prev;
+    }
+
+    public String getNext() {
+        return next;
+    }
+}
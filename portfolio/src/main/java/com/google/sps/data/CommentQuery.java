@@ -0,0 +1,112 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.SortDirection;
+
+/** Builds the sorted comments query and reads the paging cursors stored in a UserInfo entity */
+public final class CommentQuery {
+
+    private CommentQuery() {}
+
+    // Returns the comments query for the filter setting stored in the UserInfo entity. Searches go through CommentSearch.
+    public static Query build(Entity userInfoEntity) {
+        String selectedFilter = (String) userInfoEntity.getProperty("filter");
+
+        Query queryComments = null;
+        // Assign the correct query to queryComments according to the filter settings in place. 
+        switch (selectedFilter) {
+            case "recent":
+                queryComments = new Query("Comment").addSort("time", SortDirection.DESCENDING);
+                break;
+            case "oldest":
+                queryComments = new Query("Comment").addSort("time", SortDirection.ASCENDING);
+                break;
+            case "top":
+                queryComments = new Query("Comment").addSort("popularity", SortDirection.DESCENDING);
+                break;
+            case "bottom":
+                queryComments = new Query("Comment").addSort("popularity", SortDirection.ASCENDING);
+                break;
+            case "hot":
+                queryComments = new Query("Comment").addSort("hot", SortDirection.DESCENDING);
+                break;
+            case "positive":
+                queryComments = new Query("Comment").addSort("sentiment", SortDirection.DESCENDING);
+                break;
+            case "negative":
+                queryComments = new Query("Comment").addSort("sentiment", SortDirection.ASCENDING);
+                break;
+            default:
+                queryComments = new Query("Comment").addSort("name", SortDirection.ASCENDING);
+                break;
+        }
+
+        return queryComments;
+    }
+
+    // Returns the cursor where the current page starts or null if the user is on the first page.
+    public static Cursor getCursor(Entity userInfoEntity) {
+        return decode((String) userInfoEntity.getProperty("cursor"));
+    }
+
+    // Returns the start cursors of the pages before the current one, the first page being an empty string.
+    @SuppressWarnings("unchecked")
+    public static List<String> getPrevCursors(Entity userInfoEntity) {
+        List<String> prevCursors = (List<String>) userInfoEntity.getProperty("prevCursors");
+        if (prevCursors == null) {
+            return new ArrayList<String>();
+        }
+        return new ArrayList<String>(prevCursors);
+    }
+
+    // Stores the current page cursor and the cursors of the pages before it in the UserInfo entity.
+    public static void setCursors(Entity userInfoEntity, String cursor, List<String> prevCursors) {
+        userInfoEntity.setProperty("cursor", cursor);
+        userInfoEntity.setProperty("prevCursors", prevCursors);
+        userInfoEntity.setProperty("page", (long) prevCursors.size() + 1);
+    }
+
+    // Sends the user back to the first page. Must be called whenever the query itself changes.
+    public static void resetCursors(Entity userInfoEntity) {
+        setCursors(userInfoEntity, null, new ArrayList<String>());
+    }
+
+    // Returns the cursor encoded in the web safe string or null if there is none or it is invalid.
+    public static Cursor decode(String webSafeCursor) {
+        if (webSafeCursor == null || webSafeCursor.isEmpty()) {
+            return null;
+        }
+
+        try {
+            return Cursor.fromWebSafeString(webSafeCursor);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Returns the web safe string of the cursor or an empty string for the first page.
+    public static String encode(Cursor cursor) {
+        if (cursor == null) {
+            return "";
+        }
+        return cursor.toWebSafeString();
+    }
+}
@@ -0,0 +1,167 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.PropertyProjection;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Query.SortDirection;
+
+/**
+ * Inverted index over the content, name and username of the comments. Every comment stores the prefixes of its words
+ * in the indexed searchTerms list property, so looking up a word or a prefix is a single index scan that only reads
+ * the comments that contain it. Results are ranked by how many of the searched words they match, newest first among
+ * comments that match as many.
+ */
+public final class CommentSearch {
+
+    // Words are indexed by their prefixes up to this length. Longer search words are cut down to it.
+    private static final int MAX_PREFIX = 15;
+    // Upper bound on the number of index terms a single comment adds, so long comments cannot blow up the index.
+    private static final int MAX_TERMS = 800;
+    // Upper bound on the number of comments read for each searched word, and on the number of ranked results. Each word
+    // reads its newest matches, so the cut is the same on every search.
+    static final int MAX_CANDIDATES = 500;
+
+    private CommentSearch() {}
+
+    // Returns whether the UserInfo entity asks for a search instead of the plain sorted list of comments.
+    public static boolean isSearch(Entity userInfoEntity) {
+        String searchInput = (String) userInfoEntity.getProperty("searchInput");
+        return searchInput != null && !tokenize(searchInput).isEmpty();
+    }
+
+    // Stores the index terms of the comment in its searchTerms property.
+    public static void index(Entity commentEntity) {
+        Set<String> terms = new LinkedHashSet<String>();
+        addTerms(terms, "c:", (String) commentEntity.getProperty("content"));
+        addTerms(terms, "n:", (String) commentEntity.getProperty("name"));
+        addTerms(terms, "u:", (String) commentEntity.getProperty("username"));
+        commentEntity.setProperty("searchTerms", new ArrayList<String>(terms));
+    }
+
+    // Returns the keys of the comments that match the search stored in the UserInfo entity, best matches first. Each
+    // searched word is looked up as a prefix of the words in the field the user searches by.
+    public static List<Key> search(Entity userInfoEntity) {
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        Map<Key, Integer> scores = new LinkedHashMap<Key, Integer>();
+        Map<Key, Long> times = new HashMap<Key, Long>();
+        for (String term : getTerms(userInfoEntity)) {
+            // Projecting the time reads it from the (searchTerms, -time) index without loading the comments.
+            Query query = new Query("Comment").setFilter(new FilterPredicate("searchTerms", FilterOperator.EQUAL, term))
+                    .addProjection(new PropertyProjection("time", Long.class))
+                    .addSort("time", SortDirection.DESCENDING);
+
+            for (Entity entity : datastore.prepare(query).asIterable(FetchOptions.Builder.withLimit(MAX_CANDIDATES))) {
+                Integer score = scores.get(entity.getKey());
+                scores.put(entity.getKey(), score == null ? 1 : score + 1);
+                times.put(entity.getKey(), (long) entity.getProperty("time"));
+            }
+        }
+        return rank(scores, times);
+    }
+
+    // Orders the matches by how many of the searched words they match and then by time, newest first, keeping at most
+    // MAX_CANDIDATES of them.
+    static <K> List<K> rank(Map<K, Integer> scores, Map<K, Long> times) {
+        List<K> ranked = new ArrayList<K>(scores.keySet());
+        Collections.sort(ranked, (a, b) -> {
+            int compared = Integer.compare(scores.get(b), scores.get(a));
+            return compared != 0 ? compared : Long.compare(times.get(b), times.get(a));
+        });
+        return ranked.size() > MAX_CANDIDATES ? new ArrayList<K>(ranked.subList(0, MAX_CANDIDATES)) : ranked;
+    }
+
+    // Returns the number of pages of max results that a search can fill at most.
+    public static long getMaxPages(long max) {
+        return (MAX_CANDIDATES + max - 1) / max;
+    }
+
+    // Returns the index terms to look up for the search stored in the UserInfo entity, one for each searched word.
+    public static List<String> getTerms(Entity userInfoEntity) {
+        String field = getField((String) userInfoEntity.getProperty("searchBy"));
+        Set<String> terms = new LinkedHashSet<String>();
+        for (String word : tokenize((String) userInfoEntity.getProperty("searchInput"))) {
+            terms.add(field + word.substring(0, Math.min(word.length(), MAX_PREFIX)));
+        }
+        return new ArrayList<String>(terms);
+    }
+
+    // Returns the entities of the given keys in the same order, leaving out comments that no longer exist.
+    public static List<Entity> getAll(List<Key> keys) {
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        Map<Key, Entity> entities = datastore.get(keys);
+
+        List<Entity> ordered = new ArrayList<Entity>();
+        for (Key key : keys) {
+            Entity entity = entities.get(key);
+            if (entity != null) {
+                ordered.add(entity);
+            }
+        }
+        return ordered;
+    }
+
+    // Splits the text into lower case words.
+    public static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<String>();
+        if (text == null) {
+            return words;
+        }
+
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{Nd}]+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    // Adds every prefix of every word of the text, from one letter up to MAX_PREFIX, tagged with the field.
+    private static void addTerms(Set<String> terms, String field, String text) {
+        for (String word : tokenize(text)) {
+            int longest = Math.min(word.length(), MAX_PREFIX);
+            for (int length = 1; length <= longest; length++) {
+                if (terms.size() >= MAX_TERMS) {
+                    return;
+                }
+                terms.add(field + word.substring(0, length));
+            }
+        }
+    }
+
+    private static String getField(String searchBy) {
+        if ("username".equals(searchBy)) {
+            return "u:";
+        } else if ("content".equals(searchBy)) {
+            return "c:";
+        }
+        return "n:";
+    }
+}
@@ -0,0 +1,64 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.io.IOException;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.cloud.language.v1.Document;
+import com.google.cloud.language.v1.LanguageServiceClient;
+
+/**
+ * Scores the sentiment of comments with a shared Natural Language client. Every new comment is scored once by a task
+ * queue task, which stores the score in the indexed sentiment property so that comments can be sorted by it.
+ */
+public final class CommentSentiment {
+
+    // URL of the task that scores a comment, served by SentimentTaskServlet.
+    public static final String TASK_URL = "/tasks/sentiment";
+
+    // The client is thread safe and expensive to build, so every request shares the same one. It is only built on
+    // first use so that a failure to build it can be retried by the next request.
+    private static LanguageServiceClient client;
+
+    private CommentSentiment() {}
+
+    // Returns the sentiment score of the text, from -1 for negative to 1 for positive.
+    public static float analyze(String text) throws IOException {
+        Document doc = Document.newBuilder().setContent(text).setType(Document.Type.PLAIN_TEXT).build();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            float score = getClient().analyzeSentiment(doc).getDocumentSentiment().getScore();
+            failed = false;
+            return score;
+        } finally {
+            Metrics.recordDependency("language", "analyzeSentiment", start, failed);
+        }
+    }
+
+    // Adds a task that scores the comment and stores its sentiment. The task queue retries the task until it succeeds,
+    // so a slow or failing Natural Language API never holds up the post itself.
+    public static void enqueue(long commentId) {
+        QueueFactory.getDefaultQueue().add(TaskOptions.Builder.withUrl(TASK_URL).param("id", Long.toString(commentId)));
+    }
+
+    private static synchronized LanguageServiceClient getClient() throws IOException {
+        if (client == null) {
+            client = LanguageServiceClient.create();
+        }
+        return client;
+    }
+}
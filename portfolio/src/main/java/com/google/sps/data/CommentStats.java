@@ -0,0 +1,199 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.QueryResultList;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+
+/**
+ * Sharded counter of the total number of comments, with a short lived in-process cache in front of it. Every counted
+ * comment is marked as counted in the same transaction as its shard, so comments posted before the counter existed
+ * are counted once by countLegacy and only counted comments are uncounted when they are deleted.
+ */
+public final class CommentStats {
+
+    // Number of shard entities the count is spread over, so concurrent posts rarely touch the same entity.
+    private static final int NUM_SHARDS = 10;
+    // How long a total read from the datastore is trusted before the shards are read again.
+    private static final long CACHE_TTL_MILLIS = 5000;
+    // Comments are root entities, and a cross group transaction can touch 25 entity groups, one of them the shard.
+    private static final int LEGACY_BATCH_SIZE = 20;
+
+    private static final Random random = new Random();
+    private static final Object lock = new Object();
+    private static long cachedTotal;
+    private static long cachedAt = -1;
+    private static long cachedVersion = -1;
+
+    private CommentStats() {}
+
+    // Returns whether the comment is in the count, which comments posted before the counter existed are not until
+    // countLegacy gets to them.
+    public static boolean isCounted(Entity commentEntity) {
+        return Boolean.TRUE.equals(commentEntity.getProperty("counted"));
+    }
+
+    // Marks a comment that is counted in the same transaction as it is stored.
+    public static void markCounted(Entity commentEntity) {
+        commentEntity.setUnindexedProperty("counted", true);
+    }
+
+    // Adds delta to a random shard as part of the given transaction. Call cacheDelta once the transaction committed.
+    public static void increment(Transaction txn, long delta) {
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        Key shardKey = getShardKey(random.nextInt(NUM_SHARDS));
+
+        Entity shard;
+        try {
+            shard = datastore.get(txn, shardKey);
+        } catch (EntityNotFoundException e) {
+            shard = new Entity(shardKey);
+            shard.setUnindexedProperty("count", (long) 0);
+        }
+
+        long count = (long) shard.getProperty("count");
+        shard.setUnindexedProperty("count", count + delta);
+        datastore.put(txn, shard);
+    }
+
+    // Applies a committed change to the cached total so this instance sees its own writes right away.
+    public static void cacheDelta(long delta) {
+        synchronized (lock) {
+            if (cachedAt >= 0) {
+                cachedTotal += delta;
+            }
+        }
+    }
+
+    // Returns the total number of counted comments, reading every shard in one batch get when the cache is stale or was
+    // filled under another version of the comments. A negative version accepts any cached total. Until countLegacy
+    // has gone through every comment, comments posted before the counter existed are missing from it.
+    public static long getTotal(long version) {
+        synchronized (lock) {
+            if (cachedAt >= 0 && System.currentTimeMillis() - cachedAt < CACHE_TTL_MILLIS
+                    && (version < 0 || version == cachedVersion)) {
+                return cachedTotal;
+            }
+        }
+
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        List<Key> shardKeys = new ArrayList<Key>();
+        for (int i = 0; i < NUM_SHARDS; i++) {
+            shardKeys.add(getShardKey(i));
+        }
+
+        long total = 0;
+        for (Entity shard : datastore.get(shardKeys).values()) {
+            total += (long) shard.getProperty("count");
+        }
+
+        synchronized (lock) {
+            cachedTotal = total;
+            cachedAt = System.currentTimeMillis();
+            cachedVersion = version;
+        }
+        return total;
+    }
+
+    // Counts up to limit of the comments that are not counted yet, going through every comment once with a cursor that
+    // is kept between runs. Each batch marks its comments in the same transaction as it adds them to a shard, so a
+    // comment is never counted twice, however the runs overlap with posts and deletes. Returns the number of comments
+    // read, which is 0 once every comment was gone through.
+    public static int countLegacy(int limit) {
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        Key progressKey = KeyFactory.createKey("CommentStats", "legacy");
+        Entity progress;
+        try {
+            progress = datastore.get(progressKey);
+        } catch (EntityNotFoundException e) {
+            progress = new Entity(progressKey);
+        }
+        if (Boolean.TRUE.equals(progress.getProperty("done"))) {
+            return 0;
+        }
+
+        FetchOptions fetchOptions = FetchOptions.Builder.withLimit(limit);
+        Cursor startCursor = CommentQuery.decode((String) progress.getProperty("cursor"));
+        if (startCursor != null) {
+            fetchOptions.startCursor(startCursor);
+        }
+        QueryResultList<Entity> results = datastore.prepare(new Query("Comment").setKeysOnly())
+                .asQueryResultList(fetchOptions);
+
+        List<Key> keys = new ArrayList<Key>();
+        for (Entity entity : results) {
+            keys.add(entity.getKey());
+        }
+        for (int i = 0; i < keys.size(); i += LEGACY_BATCH_SIZE) {
+            countBatch(keys.subList(i, Math.min(i + LEGACY_BATCH_SIZE, keys.size())));
+        }
+
+        // Comments posted from now on are counted when they are stored, so the first pass is the only one needed.
+        progress.setUnindexedProperty("cursor", CommentQuery.encode(results.getCursor()));
+        progress.setUnindexedProperty("done", keys.size() < limit);
+        datastore.put(progress);
+        return keys.size();
+    }
+
+    private static void countBatch(List<Key> keys) {
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        TransactionOptions options = TransactionOptions.Builder.withXG(true);
+        Transaction txn = datastore.beginTransaction(options);
+        try {
+            List<Entity> uncounted = new ArrayList<Entity>();
+            for (Entity commentEntity : datastore.get(txn, keys).values()) {
+                if (!isCounted(commentEntity)) {
+                    markCounted(commentEntity);
+                    uncounted.add(commentEntity);
+                }
+            }
+            if (uncounted.isEmpty()) {
+                return;
+            }
+
+            datastore.put(txn, uncounted);
+            increment(txn, uncounted.size());
+            txn.commit();
+            cacheDelta(uncounted.size());
+        } finally {
+            if (txn.isActive()) {
+                txn.rollback();
+            }
+        }
+    }
+
+    // Forgets the cached total, for tests that start over with an empty Datastore.
+    static void clearCache() {
+        synchronized (lock) {
+            cachedAt = -1;
+        }
+    }
+
+    private static Key getShardKey(int shard) {
+        return KeyFactory.createKey("CommentStats", "shard-" + shard);
+    }
+}
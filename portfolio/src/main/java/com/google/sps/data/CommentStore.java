@@ -0,0 +1,108 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.List;
+import java.util.Map;
+import com.google.appengine.api.datastore.Entity;
+
+/** Stores the comments and the votes on them. Stores.comments() returns the implementation in use */
+public interface CommentStore {
+
+    /** One page of comments and the cursor where the next page starts, which is null on the last page */
+    final class Page {
+        private final List<Entity> entities;
+        private final String next;
+
+        public Page(List<Entity> entities, String next) {
+            this.entities = entities;
+            this.next = next;
+        }
+
+        public List<Entity> getEntities() {
+            return entities;
+        }
+
+        public String getNext() {
+            return next;
+        }
+    }
+
+    // Returns a number that changes every time a comment or a vote is written.
+    long getVersion();
+
+    // Returns a number that changes every time a comment is posted, deleted or reordered, but not when a vote is only
+    // counted, for caches that read the vote counts with getVotes. The version is the one the caller read.
+    long getContentVersion(long version);
+
+    // Returns the number of comments. The version is the one the caller read, or -1 to accept any version.
+    long count(long version);
+
+    // Returns the comment or null if there is no such comment.
+    Entity get(long id);
+
+    // Returns up to limit comments in the order of the filter stored in the UserInfo entity, starting at the cursor, or
+    // at the first comment if the cursor is null or empty. Throws IllegalArgumentException if the cursor does not
+    // belong to that order.
+    Page fetch(Entity userInfoEntity, String cursor, int limit);
+
+    // Returns the cursor that is count comments after the given one in the order of the filter stored in the UserInfo
+    // entity, or null if there are not that many comments left.
+    String skip(Entity userInfoEntity, String cursor, int count);
+
+    // Returns the given page of the comments that match the search stored in the UserInfo entity, best matches first.
+    Page search(Entity userInfoEntity, long page, int limit);
+
+    // Returns the thumbs up and thumbs down of the comments, keyed by comment id. The version is the one the caller
+    // read, or -1 to accept counts cached at any version.
+    Map<Long, VoteCount> getVotes(List<Entity> commentEntities, long version);
+
+    // Returns the votes of the user on the given comments, keyed by comment id. Comments the user never voted on are
+    // left out.
+    Map<Long, Vote> getViewerVotes(String userId, List<Long> commentIds);
+
+    // Stores a new comment and counts it. Returns the id of the comment.
+    long add(Entity commentEntity);
+
+    // Deletes the comment and uncounts it. Returns false if there was no such comment.
+    boolean delete(long id);
+
+    // Deletes the comments and uncounts them, batching as many of them per commit as the store allows. Returns the ids
+    // of the comments that existed.
+    List<Long> deleteAll(List<Long> ids);
+
+    // Removes up to limit of the votes, vote references and translations of the deleted comments. Returns the
+    // number that were removed, which is less than limit once nothing is left to sweep.
+    int sweepDeleted(List<Long> ids, int limit);
+
+    // Stores the sentiment score of the comment. Returns false if there is no such comment.
+    boolean setSentiment(long id, double sentiment);
+
+    // Counts up to limit of the comments that were posted before the total was kept as a counter. Returns the number of
+    // comments looked at, which is 0 once every comment is counted.
+    int countLegacyComments(int limit);
+
+    // Brings the popularity and hot score of up to limit comments up to date with votes that were counted but not
+    // applied to them yet. Returns the number of comments that were updated.
+    int foldPendingVotes(int limit);
+
+    // Gives or takes back the thumbs up, or the thumbs down, of the user on the comment. Returns false if there is no
+    // such comment.
+    boolean vote(String userId, long commentId, boolean thumbsUp);
+
+    // Applies a batch of thumbs up and thumbs down toggles of the user in as few transactions as possible. Returns the
+    // comments that were voted on as they are stored afterwards, leaving out the ones that do not exist.
+    List<Entity> vote(String userId, VoteBatch batch);
+}
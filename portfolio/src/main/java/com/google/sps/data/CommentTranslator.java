@@ -0,0 +1,126 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import com.google.cloud.translate.Translate;
+import com.google.cloud.translate.TranslateOptions;
+import com.google.cloud.translate.Translation;
+
+/** Translates a whole page of comments with one deadline bounded, batched call to a shared Translate client */
+public final class CommentTranslator {
+
+    private CommentTranslator() {}
+
+    // The Translate client is thread safe and expensive to build, so every request shares the same one.
+    private static class ClientHolder {
+        private static final Translate translate = TranslateOptions.getDefaultInstance().getService();
+    }
+
+    // Bounded pool the Translate calls run on, so a slow backend can neither block requests past their deadline
+    // nor pile up an unbounded number of waiting calls.
+    private static class ExecutorHolder {
+        private static final ExecutorService executor = new ThreadPoolExecutor(4, 4, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(64), runnable -> {
+                    Thread thread = new Thread(runnable, "comment-translator");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    // Translates the content of every comment on the page. Cached translations are reused and the remaining
+    // contents are sent in a single request on the shared executor. Comments whose translation does not come back
+    // within the deadline keep their original content and are flagged as not translated.
+    public static void translatePage(List<Comment> comments, String language, long deadlineMillis) {
+        Map<Long, String> contents = new HashMap<Long, String>();
+        for (Comment comment : comments) {
+            contents.put(comment.getId(), comment.getContent());
+        }
+
+        Map<Long, String> translations = TranslationCache.getAll(contents, language);
+
+        // Gather the contents that still need to be translated.
+        List<Long> untranslatedIds = new ArrayList<Long>();
+        List<String> untranslatedContents = new ArrayList<String>();
+        for (Map.Entry<Long, String> content : contents.entrySet()) {
+            if (!translations.containsKey(content.getKey())) {
+                untranslatedIds.add(content.getKey());
+                untranslatedContents.add(content.getValue());
+            }
+        }
+
+        if (!untranslatedContents.isEmpty()) {
+            try {
+                Future<Map<Long, String>> future = ExecutorHolder.executor.submit(
+                        () -> translate(contents, untranslatedIds, untranslatedContents, language));
+                Map<Long, String> fresh = future.get(deadlineMillis, TimeUnit.MILLISECONDS);
+
+                // Datastore calls are only allowed on the request thread, so the translations are persisted here.
+                TranslationCache.putAll(contents, fresh, language);
+                translations.putAll(fresh);
+            } catch (TimeoutException e) {
+                // The call keeps running in the background and leaves its result in memory for the next request.
+            } catch (RejectedExecutionException | ExecutionException e) {
+                // Leave the untranslated comments in their original language.
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Scatter the translations back into the comments.
+        for (Comment comment : comments) {
+            String translated = translations.get(comment.getId());
+            if (translated != null) {
+                comment.setTranslatedContent(translated);
+            }
+        }
+    }
+
+    // Sends the contents to the Translate API in one request and returns the results keyed by comment id. They are
+    // also kept in memory right away, so a request that gave up waiting still benefits the next one.
+    private static Map<Long, String> translate(Map<Long, String> contents, List<Long> ids,
+            List<String> untranslatedContents, String language) {
+        List<Translation> results;
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            results = ClientHolder.translate.translate(untranslatedContents,
+                    Translate.TranslateOption.targetLanguage(language));
+            failed = false;
+        } finally {
+            Metrics.recordDependency("translate", "translate", start, failed);
+        }
+
+        // Results come back in the same order as the contents that were sent.
+        Map<Long, String> fresh = new HashMap<Long, String>();
+        for (int i = 0; i < results.size(); i++) {
+            fresh.put(ids.get(i), results.get(i).getTranslatedText());
+        }
+
+        TranslationCache.putAllInMemory(contents, fresh, language);
+        return fresh;
+    }
+}
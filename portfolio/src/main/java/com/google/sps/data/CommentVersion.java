@@ -0,0 +1,139 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Random;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Transaction;
+
+/**
+ * Version of the whole comment collection, bumped by every post, delete and vote. It is a sharded counter so that
+ * bumping it does not serialize the writes, and it is read with one batch get to build the ETags of /data and
+ * /pagination. Writes bump it after they commit, in a transaction of its own, so it takes none of their cross group
+ * slots and a write never waits on a version shard. The same shards keep a content version that votes leave alone,
+ * for caches that read the vote counts apart from the comments.
+ */
+public final class CommentVersion {
+
+    // Number of shard entities the version is spread over.
+    private static final int NUM_SHARDS = 10;
+    // Number of shards tried before giving up on a bump.
+    private static final int MAX_ATTEMPTS = 3;
+
+    private static final Random random = new Random();
+    // The version and content version of the last read, so that a request that needs both reads the shards once.
+    private static volatile long[] lastRead = {-1, -1};
+
+    private CommentVersion() {}
+
+    // Bumps the version after a change was committed. A reader that sees the change before the bump caches it under
+    // the old version, which the bump then retires, so bumping late never leaves a stale response cached. A bump that
+    // fails on every shard leaves the version behind until the next write bumps it.
+    public static void bump() {
+        bump(true);
+    }
+
+    // Bumps the version but not the content version after votes were counted on their shards, which changes neither
+    // the comments nor their order until the votes are folded into them.
+    public static void bumpVotes() {
+        bump(false);
+    }
+
+    private static void bump(boolean content) {
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            Key shardKey = getShardKey(random.nextInt(NUM_SHARDS));
+            Transaction txn = datastore.beginTransaction();
+            try {
+                Entity shard;
+                try {
+                    shard = datastore.get(txn, shardKey);
+                } catch (EntityNotFoundException e) {
+                    shard = new Entity(shardKey);
+                    shard.setUnindexedProperty("version", (long) 0);
+                }
+
+                shard.setUnindexedProperty("version", (long) shard.getProperty("version") + 1);
+                if (content) {
+                    shard.setUnindexedProperty("content", getContent(shard) + 1);
+                }
+                datastore.put(txn, shard);
+                txn.commit();
+                return;
+            } catch (ConcurrentModificationException e) {
+                // Another write bumped the same shard at the same time, so try another one.
+            } finally {
+                if (txn.isActive()) {
+                    txn.rollback();
+                }
+            }
+        }
+    }
+
+    // Returns the current version. It only ever grows, so any change to the comments gives a different value.
+    public static long get() {
+        List<Key> shardKeys = new ArrayList<Key>();
+        for (int i = 0; i < NUM_SHARDS; i++) {
+            shardKeys.add(getShardKey(i));
+        }
+
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        long version = 0;
+        long content = 0;
+        for (Entity shard : datastore.get(shardKeys).values()) {
+            version += (long) shard.getProperty("version");
+            content += getContent(shard);
+        }
+        lastRead = new long[] {version, content};
+        return version;
+    }
+
+    // Returns the content version that goes with the version the caller read. It changes with every post, delete and
+    // fold of votes, but not with votes that are still on their shards.
+    public static long getContent(long version) {
+        long[] read = lastRead;
+        if (read[0] != version) {
+            get();
+            read = lastRead;
+        }
+        return read[1];
+    }
+
+    // Builds a strong ETag out of the version and everything else the response depends on.
+    public static String getETag(long version, Object... parts) {
+        StringBuilder value = new StringBuilder();
+        for (Object part : parts) {
+            value.append(part).append('|');
+        }
+
+        return "\"" + version + "-" + Digests.shortHash(value.toString()) + "\"";
+    }
+
+    // Shards written before the content version existed count as 0.
+    private static long getContent(Entity shard) {
+        return shard.hasProperty("content") ? (long) shard.getProperty("content") : 0;
+    }
+
+    private static Key getShardKey(int shard) {
+        return KeyFactory.createKey("CommentVersion", "shard-" + shard);
+    }
+}
@@ -0,0 +1,460 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.PreparedQuery;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.QueryResultList;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+
+/**
+ * Keeps the comments in the Datastore. The total is kept in CommentStats and the votes in VoteCounter shards and Vote
+ * entities, each written in the same transaction as the change they count. The CommentVersion is bumped once the change
+ * is committed.
+ */
+final class DatastoreCommentStore implements CommentStore {
+
+    // A cross group transaction can touch 25 entity groups. Each comment takes its Vote and one of its shards, and
+    // every transaction may also write the UserInfo.
+    private static final int VOTE_BATCH_SIZE = 12;
+    // Deleting a batch of comments also writes a CommentStats shard.
+    private static final int DELETE_BATCH_SIZE = 24;
+
+    @Override
+    public long getVersion() {
+        return CommentVersion.get();
+    }
+
+    @Override
+    public long getContentVersion(long version) {
+        return CommentVersion.getContent(version);
+    }
+
+    @Override
+    public long count(long version) {
+        return CommentStats.getTotal(version);
+    }
+
+    @Override
+    public Entity get(long id) {
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        try {
+            return datastore.get(KeyFactory.createKey("Comment", id));
+        } catch (EntityNotFoundException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public Page fetch(Entity userInfoEntity, String cursor, int limit) {
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        PreparedQuery results = datastore.prepare(CommentQuery.build(userInfoEntity));
+
+        // Only read the comments of the page instead of every comment before it.
+        FetchOptions fetchOptions = FetchOptions.Builder.withLimit(limit);
+        Cursor startCursor = CommentQuery.decode(cursor);
+        if (startCursor != null) {
+            fetchOptions.startCursor(startCursor);
+        }
+        QueryResultList<Entity> entities = results.asQueryResultList(fetchOptions);
+
+        // There is no next page when this one was not filled up.
+        String next = null;
+        if (entities.size() == limit) {
+            next = CommentQuery.encode(entities.getCursor());
+        }
+        return new Page(entities, next);
+    }
+
+    @Override
+    public String skip(Entity userInfoEntity, String cursor, int count) {
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        PreparedQuery results = datastore.prepare(CommentQuery.build(userInfoEntity).setKeysOnly());
+
+        // Keys only queries are billed as small operations and do not read the comments themselves.
+        FetchOptions fetchOptions = FetchOptions.Builder.withLimit(count);
+        Cursor startCursor = CommentQuery.decode(cursor);
+        if (startCursor != null) {
+            fetchOptions.startCursor(startCursor);
+        }
+        QueryResultList<Entity> keys = results.asQueryResultList(fetchOptions);
+
+        if (keys.size() < count) {
+            return null;
+        }
+        return CommentQuery.encode(keys.getCursor());
+    }
+
+    @Override
+    public Page search(Entity userInfoEntity, long page, int limit) {
+        // Search results are ranked in memory, so their pages are slices of the ranked keys.
+        List<Key> ranked = CommentSearch.search(userInfoEntity);
+        int from = (int) Math.min(ranked.size(), (page - 1) * limit);
+        int to = (int) Math.min(ranked.size(), page * limit);
+        List<Entity> entities = CommentSearch.getAll(ranked.subList(from, to));
+
+        // The page number is kept in UserInfo, so the next cursor only has to tell that there is a next page.
+        String next = null;
+        if (to < ranked.size()) {
+            next = "search-" + (page + 1);
+        }
+        return new Page(entities, next);
+    }
+
+    @Override
+    public Map<Long, VoteCount> getVotes(List<Entity> commentEntities, long version) {
+        // Add the votes that are still spread over the shards of each comment.
+        return VoteCounter.getCounts(commentEntities, version);
+    }
+
+    @Override
+    public Map<Long, Vote> getViewerVotes(String userId, List<Long> commentIds) {
+        return Vote.getAll(userId, commentIds);
+    }
+
+    @Override
+    public long add(Entity commentEntity) {
+        // Store the comment and count it in the same transaction so the total never drifts.
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        TransactionOptions options = TransactionOptions.Builder.withXG(true);
+        Transaction txn = datastore.beginTransaction(options);
+        try {
+            CommentStats.markCounted(commentEntity);
+            datastore.put(txn, commentEntity);
+            CommentStats.increment(txn, 1);
+            txn.commit();
+        } finally {
+            if (txn.isActive()) {
+                txn.rollback();
+            }
+        }
+        CommentVersion.bump();
+
+        CommentStats.cacheDelta(1);
+        FirstPageCache.invalidateAll();
+        return commentEntity.getKey().getId();
+    }
+
+    @Override
+    public boolean delete(long id) {
+        Key commentEntityKey = KeyFactory.createKey("Comment", id);
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+
+        // Delete the comment and uncount it in the same transaction so the total never drifts.
+        TransactionOptions options = TransactionOptions.Builder.withXG(true);
+        Transaction txn = datastore.beginTransaction(options);
+        long uncounted = 0;
+        try {
+            if (CommentStats.isCounted(datastore.get(txn, commentEntityKey))) {
+                uncounted = 1;
+                CommentStats.increment(txn, -1);
+            }
+            datastore.delete(txn, commentEntityKey);
+            txn.commit();
+        } catch (EntityNotFoundException e) {
+            // The comment was already deleted, so there is nothing to uncount.
+            return false;
+        } finally {
+            if (txn.isActive()) {
+                txn.rollback();
+            }
+        }
+
+        CommentVersion.bump();
+        CommentStats.cacheDelta(-uncounted);
+        FirstPageCache.invalidateComment(id);
+        return true;
+    }
+
+    @Override
+    public List<Long> deleteAll(List<Long> ids) {
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        List<Long> deleted = new ArrayList<Long>();
+        for (int i = 0; i < ids.size(); i += DELETE_BATCH_SIZE) {
+            List<Key> keys = new ArrayList<Key>();
+            for (long id : ids.subList(i, Math.min(i + DELETE_BATCH_SIZE, ids.size()))) {
+                keys.add(KeyFactory.createKey("Comment", id));
+            }
+
+            // Delete the batch and uncount it in the same transaction so the total never drifts.
+            TransactionOptions options = TransactionOptions.Builder.withXG(true);
+            Transaction txn = datastore.beginTransaction(options);
+            try {
+                Map<Key, Entity> existing = datastore.get(txn, keys);
+                if (existing.isEmpty()) {
+                    continue;
+                }
+                long uncounted = 0;
+                for (Entity commentEntity : existing.values()) {
+                    if (CommentStats.isCounted(commentEntity)) {
+                        uncounted++;
+                    }
+                }
+                datastore.delete(txn, existing.keySet());
+                if (uncounted > 0) {
+                    CommentStats.increment(txn, -uncounted);
+                }
+                txn.commit();
+                CommentVersion.bump();
+
+                for (Key key : existing.keySet()) {
+                    deleted.add(key.getId());
+                }
+                CommentStats.cacheDelta(-uncounted);
+            } finally {
+                if (txn.isActive()) {
+                    txn.rollback();
+                }
+            }
+        }
+
+        for (long id : deleted) {
+            FirstPageCache.invalidateComment(id);
+        }
+        return deleted;
+    }
+
+    @Override
+    public int sweepDeleted(List<Long> ids, int limit) {
+        VoteCounter.deleteShards(ids);
+
+        List<Key> commentKeys = new ArrayList<Key>();
+        for (long id : ids) {
+            commentKeys.add(KeyFactory.createKey("Comment", id));
+        }
+
+        // An IN filter takes at most 30 values.
+        int removed = 0;
+        for (int i = 0; i < ids.size() && removed < limit; i += 30) {
+            List<Long> chunk = ids.subList(i, Math.min(i + 30, ids.size()));
+            List<Key> chunkKeys = commentKeys.subList(i, Math.min(i + 30, ids.size()));
+            removed += deleteVotes(chunk, limit - removed);
+            if (removed < limit) {
+                removed += removeReferences("liked", chunkKeys, limit - removed);
+            }
+            if (removed < limit) {
+                removed += removeReferences("unliked", chunkKeys, limit - removed);
+            }
+            if (removed < limit) {
+                removed += TranslationCache.deleteAll(chunk, limit - removed);
+            }
+        }
+        return removed;
+    }
+
+    // Deletes up to limit Vote entities on the comments. Returns how many were deleted.
+    private static int deleteVotes(List<Long> ids, int limit) {
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        Query query = new Query("Vote").setFilter(new FilterPredicate("comment", FilterOperator.IN, ids)).setKeysOnly();
+
+        List<Key> voteKeys = new ArrayList<Key>();
+        for (Entity voteEntity : datastore.prepare(query).asList(FetchOptions.Builder.withLimit(limit))) {
+            voteKeys.add(voteEntity.getKey());
+        }
+        datastore.delete(voteKeys);
+        return voteKeys.size();
+    }
+
+    // Takes the comments out of the liked or unliked lists of up to limit users. Returns how many users were updated.
+    @SuppressWarnings("unchecked")
+    private static int removeReferences(String property, List<Key> commentKeys, int limit) {
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        Query query = new Query("UserInfo").setFilter(new FilterPredicate(property, FilterOperator.IN, commentKeys))
+                .setKeysOnly();
+
+        int updated = 0;
+        for (Entity userInfoEntity : datastore.prepare(query).asList(FetchOptions.Builder.withLimit(limit))) {
+            Entity stored = Stores.users().update(userInfoEntity.getKey().getName(), entity -> {
+                List<Key> references = (List<Key>) entity.getProperty(property);
+                if (references != null) {
+                    references.removeAll(commentKeys);
+                    entity.setProperty(property, references);
+                }
+            });
+            if (stored != null) {
+                UserInfoRepository.remember(stored);
+            }
+            updated++;
+        }
+        return updated;
+    }
+
+    @Override
+    public boolean setSentiment(long id, double sentiment) {
+        Key commentEntityKey = KeyFactory.createKey("Comment", id);
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+
+        // Read the comment again in the transaction, so that votes folded into it meanwhile are not overwritten.
+        TransactionOptions options = TransactionOptions.Builder.withXG(true);
+        Transaction txn = datastore.beginTransaction(options);
+        try {
+            Entity commentEntity = datastore.get(txn, commentEntityKey);
+            commentEntity.setProperty("sentiment", sentiment);
+            datastore.put(txn, commentEntity);
+            txn.commit();
+        } catch (EntityNotFoundException e) {
+            return false;
+        } finally {
+            if (txn.isActive()) {
+                txn.rollback();
+            }
+        }
+        CommentVersion.bump();
+
+        FirstPageCache.invalidateAll();
+        return true;
+    }
+
+    @Override
+    public int countLegacyComments(int limit) {
+        return CommentStats.countLegacy(limit);
+    }
+
+    @Override
+    public int foldPendingVotes(int limit) {
+        return VoteCounter.foldPending(limit);
+    }
+
+    @Override
+    public boolean vote(String userId, long commentId, boolean thumbsUp) {
+        VoteBatch batch = new VoteBatch();
+        batch.toggle(commentId, thumbsUp);
+        return !applyVotes(userId, batch).isEmpty();
+    }
+
+    @Override
+    public List<Entity> vote(String userId, VoteBatch batch) {
+        List<Key> keys = new ArrayList<Key>();
+        for (long commentId : applyVotes(userId, batch)) {
+            keys.add(KeyFactory.createKey("Comment", commentId));
+        }
+
+        // Read the comments again, since committing the votes may have folded their shards into them.
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        Map<Key, Entity> commentEntities = datastore.get(keys);
+        List<Entity> voted = new ArrayList<Entity>();
+        for (Key key : keys) {
+            if (commentEntities.containsKey(key)) {
+                voted.add(commentEntities.get(key));
+            }
+        }
+        return voted;
+    }
+
+    // Applies the votes to the comments that exist, in as few transactions as the entity group limit allows. Returns
+    // the ids of the comments that were voted on.
+    private static List<Long> applyVotes(String userId, VoteBatch batch) {
+        List<Key> keys = new ArrayList<Key>();
+        for (long commentId : batch.getCommentIds()) {
+            keys.add(KeyFactory.createKey("Comment", commentId));
+        }
+
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        Map<Key, Entity> commentEntities = datastore.get(keys);
+        List<Long> commentIds = new ArrayList<Long>();
+        for (Key key : keys) {
+            if (commentEntities.containsKey(key)) {
+                commentIds.add(key.getId());
+            }
+        }
+
+        for (int i = 0; i < commentIds.size(); i += VOTE_BATCH_SIZE) {
+            List<Long> chunk = commentIds.subList(i, Math.min(i + VOTE_BATCH_SIZE, commentIds.size()));
+            applyVotes(userId, batch, chunk, commentEntities);
+        }
+        return commentIds;
+    }
+
+    private static void applyVotes(String userId, VoteBatch batch, List<Long> commentIds,
+            Map<Key, Entity> commentEntities) {
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        TransactionOptions options = TransactionOptions.Builder.withXG(true);
+        Transaction txn = datastore.beginTransaction(options);
+        try {
+            Map<Long, Vote> votes = Vote.getAll(txn, userId, commentIds);
+
+            // Votes that are still in the user's old liked and unliked lists are moved over to their own entities.
+            Entity userInfoEntity = null;
+            UserInfo userInfo = null;
+            if (votes.size() < commentIds.size()) {
+                userInfoEntity = UserInfoRepository.get(txn, userId);
+                if (userInfoEntity != null) {
+                    userInfo = new UserInfo(userInfoEntity);
+                }
+            }
+            boolean migrated = false;
+
+            for (long commentId : commentIds) {
+                Vote vote = votes.get(commentId);
+                if (vote == null) {
+                    vote = new Vote(userId, commentId, false, false);
+                    Entity commentEntity = commentEntities.get(KeyFactory.createKey("Comment", commentId));
+                    if (userInfo != null
+                            && (userInfo.isLikedComment(commentEntity) || userInfo.isUnlikedComment(commentEntity))) {
+                        vote = new Vote(userId, commentId, userInfo.isLikedComment(commentEntity),
+                                userInfo.isUnlikedComment(commentEntity));
+                        userInfo.removeFromLikedComments(commentEntity);
+                        userInfo.removeFromUnlikedComments(commentEntity);
+                        migrated = true;
+                    }
+                }
+
+                // Count the vote on one of the comment's shards instead of rewriting the comment itself.
+                long thumbsupDelta = 0;
+                long thumbsdownDelta = 0;
+                if (batch.isLikeToggled(commentId)) {
+                    thumbsupDelta = vote.isLiked() ? -1 : 1;
+                    vote.toggleLiked();
+                }
+                if (batch.isUnlikeToggled(commentId)) {
+                    thumbsdownDelta = vote.isUnliked() ? -1 : 1;
+                    vote.toggleUnliked();
+                }
+                VoteCounter.add(txn, commentId, thumbsupDelta, thumbsdownDelta);
+                vote.updateDatabase(txn);
+            }
+
+            if (migrated) {
+                userInfo.updateDatabase(userInfoEntity, txn);
+            }
+
+            txn.commit();
+            CommentVersion.bumpVotes();
+            if (migrated) {
+                UserInfoRepository.remember(userInfoEntity);
+            }
+            for (long commentId : commentIds) {
+                VoteCounter.committed(commentId);
+            }
+        } finally {
+            if (txn.isActive()) {
+                txn.rollback();
+            }
+        }
+    }
+}
@@ -0,0 +1,269 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import com.google.appengine.api.datastore.Blob;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.PropertyProjection;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+
+/**
+ * Keeps the UserInfo entities in the Datastore, keyed by user id. Every username is claimed by a Username entity keyed
+ * by the lowercased username, written in the same transaction as the UserInfo entity that uses it, and a username is
+ * taken exactly when it is claimed. A Bloom filter of the claimed usernames, built by cron and stored in a
+ * UsernameFilter entity, answers most checks of free usernames.
+ */
+final class DatastoreUserStore implements UserStore {
+
+    // Number of times an update is tried again when another request changed the same UserInfo entity.
+    private static final int ATTEMPTS = 3;
+    // Number of usernames the filter of taken usernames is sized for. Past that it answers maybe more often, which
+    // only costs a lookup.
+    private static final int EXPECTED_USERNAMES = 100000;
+    // How long an instance uses its copy of the filter of taken usernames before it reads the one cron built again.
+    private static final long FILTER_TTL_MILLIS = 10 * 60 * 1000;
+    // Number of users whose claims are read with one batch get while refreshing the usernames.
+    private static final int CLAIM_BATCH_SIZE = 100;
+
+    private final AtomicBoolean reloading = new AtomicBoolean();
+    private volatile BloomFilter takenUsernames;
+    private volatile long filterLoadedAt;
+
+    @Override
+    public Entity get(String id) {
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        try {
+            return datastore.get(UserInfoRepository.getKey(id));
+        } catch (EntityNotFoundException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void put(Entity userInfoEntity) {
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        datastore.put(userInfoEntity);
+    }
+
+    @Override
+    public Entity update(String id, Consumer<Entity> change) {
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        for (int attempt = 1; ; attempt++) {
+            Transaction txn = datastore.beginTransaction();
+            try {
+                Entity userInfoEntity = UserInfoRepository.get(txn, id);
+                if (userInfoEntity == null) {
+                    return null;
+                }
+
+                change.accept(userInfoEntity);
+                datastore.put(txn, userInfoEntity);
+                txn.commit();
+                return userInfoEntity;
+            } catch (ConcurrentModificationException e) {
+                if (attempt >= ATTEMPTS) {
+                    throw e;
+                }
+            } finally {
+                if (txn.isActive()) {
+                    txn.rollback();
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean register(Entity userInfoEntity) {
+        String id = userInfoEntity.getKey().getName();
+        String username = (String) userInfoEntity.getProperty("username");
+        Key usernameKey = getUsernameKey(username);
+
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        for (int attempt = 1; ; attempt++) {
+            // The Username and UserInfo entities are in different entity groups, along with the username the user had.
+            TransactionOptions options = TransactionOptions.Builder.withXG(true);
+            Transaction txn = datastore.beginTransaction(options);
+            try {
+                Entity claim = get(txn, usernameKey);
+                if (claim != null && !id.equals(claim.getProperty("user"))) {
+                    return false;
+                }
+
+                // Give up the username the user had before, so that someone else can take it.
+                Entity previous = UserInfoRepository.get(txn, id);
+                String previousUsername = previous == null ? null : (String) previous.getProperty("username");
+                if (previousUsername != null && !getUsernameKey(previousUsername).equals(usernameKey)) {
+                    Entity previousClaim = get(txn, getUsernameKey(previousUsername));
+                    if (previousClaim != null && id.equals(previousClaim.getProperty("user"))) {
+                        datastore.delete(txn, previousClaim.getKey());
+                    }
+                }
+
+                claim = new Entity(usernameKey);
+                claim.setUnindexedProperty("user", id);
+                datastore.put(txn, claim);
+                datastore.put(txn, userInfoEntity);
+                txn.commit();
+
+                BloomFilter filter = getTakenUsernames();
+                if (filter != null) {
+                    filter.put(usernameKey.getName());
+                }
+                return true;
+            } catch (ConcurrentModificationException e) {
+                if (attempt >= ATTEMPTS) {
+                    throw e;
+                }
+            } finally {
+                if (txn.isActive()) {
+                    txn.rollback();
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean isUsernameTaken(String username) {
+        // Most free usernames are not in the filter, which answers without an RPC.
+        BloomFilter filter = getTakenUsernames();
+        if (filter != null && !filter.mightContain(getUsernameKey(username).getName())) {
+            return false;
+        }
+
+        return get(null, getUsernameKey(username)) != null;
+    }
+
+    // Claims the usernames of the users who registered before usernames were claimed, so that they are taken in any
+    // case like the others, then builds the filter of taken usernames and stores it for every instance to read.
+    @Override
+    public void refreshUsernames() {
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        BloomFilter filter = new BloomFilter(EXPECTED_USERNAMES, 0.01);
+
+        // A projection query only reads the index, not the entities.
+        Query users = new Query("UserInfo").addProjection(new PropertyProjection("username", String.class));
+        List<Entity> batch = new ArrayList<Entity>();
+        for (Entity userInfoEntity : datastore.prepare(users).asIterable()) {
+            batch.add(userInfoEntity);
+            if (batch.size() == CLAIM_BATCH_SIZE) {
+                claimLegacyUsernames(batch, filter);
+                batch.clear();
+            }
+        }
+        claimLegacyUsernames(batch, filter);
+
+        Query claims = new Query("Username").setKeysOnly();
+        for (Entity claim : datastore.prepare(claims).asIterable()) {
+            filter.put(claim.getKey().getName());
+        }
+
+        Entity stored = new Entity(getFilterKey());
+        stored.setUnindexedProperty("bits", new Blob(filter.toBytes()));
+        stored.setUnindexedProperty("hashes", (long) filter.getNumHashes());
+        datastore.put(stored);
+
+        takenUsernames = filter;
+        filterLoadedAt = System.currentTimeMillis();
+    }
+
+    // Claims the usernames of the users that have none yet and puts them in the filter. When legacy usernames only
+    // differ in case, the first user read keeps the claim and the others keep their username without one.
+    private static void claimLegacyUsernames(List<Entity> userInfoEntities, BloomFilter filter) {
+        List<Key> usernameKeys = new ArrayList<Key>();
+        for (Entity userInfoEntity : userInfoEntities) {
+            usernameKeys.add(getUsernameKey((String) userInfoEntity.getProperty("username")));
+        }
+
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        Map<Key, Entity> claims = datastore.get(usernameKeys);
+        for (int i = 0; i < userInfoEntities.size(); i++) {
+            Key usernameKey = usernameKeys.get(i);
+            filter.put(usernameKey.getName());
+            if (claims.containsKey(usernameKey)) {
+                continue;
+            }
+
+            Transaction txn = datastore.beginTransaction();
+            try {
+                if (get(txn, usernameKey) == null) {
+                    Entity claim = new Entity(usernameKey);
+                    claim.setUnindexedProperty("user", userInfoEntities.get(i).getKey().getName());
+                    datastore.put(txn, claim);
+                    txn.commit();
+                }
+            } catch (ConcurrentModificationException e) {
+                // Someone claimed the username meanwhile, which is just as good.
+            } finally {
+                if (txn.isActive()) {
+                    txn.rollback();
+                }
+            }
+        }
+    }
+
+    // Returns this instance's copy of the filter of taken usernames, or null until cron first builds one. Once the copy
+    // is old enough to miss many of the usernames claimed through other instances, one request reads the stored filter
+    // again with a single get while the others keep using the old copy. A miss only means that the claim fails when
+    // the user registers.
+    private BloomFilter getTakenUsernames() {
+        BloomFilter filter = takenUsernames;
+        long now = System.currentTimeMillis();
+        if ((filter == null || now - filterLoadedAt >= FILTER_TTL_MILLIS) && reloading.compareAndSet(false, true)) {
+            try {
+                filterLoadedAt = now;
+                Entity stored = get(null, getFilterKey());
+                if (stored != null) {
+                    filter = BloomFilter.fromBytes(((Blob) stored.getProperty("bits")).getBytes(),
+                            (int) (long) stored.getProperty("hashes"));
+                    takenUsernames = filter;
+                }
+            } finally {
+                reloading.set(false);
+            }
+        }
+        return filter;
+    }
+
+    private static Key getFilterKey() {
+        return KeyFactory.createKey("UsernameFilter", "taken");
+    }
+
+    private static Entity get(Transaction txn, Key key) {
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        try {
+            return datastore.get(txn, key);
+        } catch (EntityNotFoundException e) {
+            return null;
+        }
+    }
+
+    // Usernames are claimed regardless of case, so that no one can pose as another user by changing a letter's case.
+    private static Key getUsernameKey(String username) {
+        return KeyFactory.createKey("Username", username.toLowerCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,137 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import com.google.appengine.api.datastore.Entity;
+
+/**
+ * Process cache of the first page of comments for every sort order, search and language that was asked for. Comment
+ * posts and deletes drop the pages they affect right away, and a page built for an older content version of the
+ * comments is never served, so that writes made on other instances show up too. Votes do not retire the pages, since
+ * the vote counts are read apart from the cached entities on every request.
+ */
+public final class FirstPageCache {
+
+    // How long a first page is served from memory before the query runs again.
+    private static final long TTL_MILLIS = 10000;
+
+    private static final Map<String, Page> pages = new ConcurrentHashMap<String, Page>();
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    private FirstPageCache() {}
+
+    /** A cached first page: its comment entities, the cursor of the second page and the translated contents */
+    public static final class Page {
+        private final List<Entity> entities;
+        private final String next;
+        private final Map<Long, String> translations;
+        private final long version;
+        private final long expiresAt;
+
+        private Page(List<Entity> entities, String next, Map<Long, String> translations, long version, long expiresAt) {
+            this.entities = entities;
+            this.next = next;
+            this.translations = translations;
+            this.version = version;
+            this.expiresAt = expiresAt;
+        }
+
+        public List<Entity> getEntities() {
+            return entities;
+        }
+
+        public String getNext() {
+            return next;
+        }
+
+        public Map<Long, String> getTranslations() {
+            return translations;
+        }
+    }
+
+    // Returns the cache key of the first page the UserInfo entity asks for in the given language.
+    public static String getKey(Entity userInfoEntity, String language) {
+        return userInfoEntity.getProperty("filter") + "|" + userInfoEntity.getProperty("searchBy") + "|"
+                + userInfoEntity.getProperty("searchInput") + "|" + userInfoEntity.getProperty("max") + "|" + language;
+    }
+
+    // Returns the cached page or null if it is not cached, expired or was built for another content version of the
+    // comments.
+    public static Page get(String key, long version) {
+        Page page = pages.get(key);
+        if (page == null || page.version != version || page.expiresAt < System.currentTimeMillis()) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return page;
+    }
+
+    // Caches a first page. The entities are shared between requests, so they must not be changed afterwards.
+    public static void put(String key, List<Entity> entities, String next, List<Comment> comments, long version) {
+        Map<Long, String> translations = new HashMap<Long, String>();
+        for (Comment comment : comments) {
+            if (comment.isTranslated()) {
+                translations.put(comment.getId(), comment.getContent());
+            }
+        }
+
+        pages.put(key, new Page(Collections.unmodifiableList(new ArrayList<Entity>(entities)), next,
+                Collections.unmodifiableMap(translations), version, System.currentTimeMillis() + TTL_MILLIS));
+    }
+
+    // Drops every cached page, since a new comment can land on the first page of any order.
+    public static void invalidateAll() {
+        pages.clear();
+    }
+
+    // Drops the cached pages that show the comment.
+    public static void invalidateComment(long commentId) {
+        for (Map.Entry<String, Page> page : pages.entrySet()) {
+            for (Entity entity : page.getValue().entities) {
+                if (entity.getKey().getId() == commentId) {
+                    pages.remove(page.getKey(), page.getValue());
+                    break;
+                }
+            }
+        }
+    }
+
+    // Drops the cached pages sorted by popularity, whose order changes when votes are folded into the comments.
+    public static void invalidatePopularity() {
+        for (String key : pages.keySet()) {
+            if (key.startsWith("top|") || key.startsWith("bottom|") || key.startsWith("hot|")) {
+                pages.remove(key);
+            }
+        }
+    }
+
+    public static long getHits() {
+        return hits.get();
+    }
+
+    public static long getMisses() {
+        return misses.get();
+    }
+}
@@ -0,0 +1,48 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+/**
+ * The hot score of a comment: the lower bound of the Wilson score interval of its thumbs up ratio, halved every
+ * HALF_LIFE_MILLIS of age. Stored as its base 2 logarithm, log2(wilson) + time / HALF_LIFE_MILLIS, which sorts
+ * comments exactly like the decayed score does at any moment. The stored score therefore only changes with votes,
+ * never with the passing of time, and the hot order stays a plain indexed sort.
+ */
+public final class HotScore {
+
+    // Age at which a comment needs twice the rating to keep its place.
+    private static final double HALF_LIFE_MILLIS = 24 * 60 * 60 * 1000;
+    // Normal quantile of the 95% confidence level.
+    private static final double Z = 1.96;
+
+    private HotScore() {}
+
+    // Returns the hot score of a comment posted at the given time with the given votes.
+    public static double compute(long thumbsup, long thumbsdown, long time) {
+        // One vote of each kind is added, so that comments without votes start in the middle and not at zero.
+        return log2(wilsonLowerBound(thumbsup + 1, thumbsdown + 1)) + time / HALF_LIFE_MILLIS;
+    }
+
+    // Returns the lower bound of the Wilson score interval of the positive ratio.
+    private static double wilsonLowerBound(long positive, long negative) {
+        double n = positive + negative;
+        double p = positive / n;
+        return (p + Z * Z / (2 * n) - Z * Math.sqrt((p * (1 - p) + Z * Z / (4 * n)) / n)) / (1 + Z * Z / n);
+    }
+
+    private static double log2(double value) {
+        return Math.log(value) / Math.log(2);
+    }
+}
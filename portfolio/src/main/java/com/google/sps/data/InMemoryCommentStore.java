@@ -0,0 +1,452 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import com.google.appengine.api.datastore.Entity;
+
+/**
+ * Keeps the comments in the process, for benchmarks and load tests. Every sort order of CommentQuery has its own
+ * skip list index, so a page is read by walking the index from the cursor like the Datastore walks its indexes, and
+ * searches go through an inverted index of the searchTerms property. Writes are serialized and readers never block,
+ * so like global Datastore queries a reader can briefly miss a comment that is being written.
+ */
+final class InMemoryCommentStore implements CommentStore {
+
+    /** The property a filter sorts the comments by and its direction */
+    private static final class Order {
+        private final String property;
+        private final boolean descending;
+
+        private Order(String property, boolean descending) {
+            this.property = property;
+            this.descending = descending;
+        }
+    }
+
+    /** Position of a comment in one of the sort orders */
+    private static final class IndexEntry {
+        private final Comparable<Object> value;
+        private final long id;
+
+        private IndexEntry(Comparable<Object> value, long id) {
+            this.value = value;
+            this.id = id;
+        }
+    }
+
+    // The orders of CommentQuery.build, keyed by filter. Any other filter sorts by name.
+    private static final Map<String, Order> ORDERS = new LinkedHashMap<String, Order>();
+    static {
+        ORDERS.put("recent", new Order("time", true));
+        ORDERS.put("oldest", new Order("time", false));
+        ORDERS.put("top", new Order("popularity", true));
+        ORDERS.put("bottom", new Order("popularity", false));
+        ORDERS.put("alphabetical", new Order("name", false));
+        ORDERS.put("hot", new Order("hot", true));
+        ORDERS.put("positive", new Order("sentiment", true));
+        ORDERS.put("negative", new Order("sentiment", false));
+    }
+
+    private final Map<Long, Entity> comments = new ConcurrentHashMap<Long, Entity>();
+    private final Map<String, NavigableSet<IndexEntry>> indexes = new HashMap<String, NavigableSet<IndexEntry>>();
+    // Comment ids keyed by search term, in id order like the results of a Datastore equality query.
+    private final Map<String, NavigableSet<Long>> terms = new ConcurrentHashMap<String, NavigableSet<Long>>();
+    // Votes keyed by user id and comment id, like the names of the Vote entities.
+    private final Map<String, Vote> votes = new ConcurrentHashMap<String, Vote>();
+    private final AtomicLong nextId = new AtomicLong();
+    private final AtomicLong version = new AtomicLong();
+    private final Object writeLock = new Object();
+
+    InMemoryCommentStore() {
+        for (Map.Entry<String, Order> order : ORDERS.entrySet()) {
+            indexes.put(order.getKey(), new ConcurrentSkipListSet<IndexEntry>((a, b) -> {
+                int compared = a.value.compareTo(b.value);
+                if (order.getValue().descending) {
+                    compared = -compared;
+                }
+                // Ties are broken by id, the same way the Datastore breaks them by key.
+                return compared != 0 ? compared : Long.compare(a.id, b.id);
+            }));
+        }
+    }
+
+    @Override
+    public long getVersion() {
+        return version.get();
+    }
+
+    @Override
+    public long getContentVersion(long version) {
+        // Votes change the stored comments and reorder them right away, so every version is a new content version.
+        return version;
+    }
+
+    @Override
+    public long count(long version) {
+        return comments.size();
+    }
+
+    @Override
+    public Entity get(long id) {
+        Entity commentEntity = comments.get(id);
+        return commentEntity == null ? null : commentEntity.clone();
+    }
+
+    @Override
+    public Page fetch(Entity userInfoEntity, String cursor, int limit) {
+        String filter = getFilter(userInfoEntity);
+        List<Entity> entities = new ArrayList<Entity>();
+        IndexEntry last = null;
+        for (IndexEntry entry : getEntries(filter, cursor)) {
+            if (entities.size() >= limit) {
+                break;
+            }
+            Entity commentEntity = comments.get(entry.id);
+            // Skip comments that were deleted after the entry was read.
+            if (commentEntity != null) {
+                entities.add(commentEntity.clone());
+                last = entry;
+            }
+        }
+
+        // There is no next page when this one was not filled up.
+        String next = null;
+        if (entities.size() == limit) {
+            next = encode(filter, last);
+        }
+        return new Page(entities, next);
+    }
+
+    @Override
+    public String skip(Entity userInfoEntity, String cursor, int count) {
+        String filter = getFilter(userInfoEntity);
+        int skipped = 0;
+        for (IndexEntry entry : getEntries(filter, cursor)) {
+            if (++skipped == count) {
+                return encode(filter, entry);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Page search(Entity userInfoEntity, long page, int limit) {
+        Map<Long, Integer> scores = new LinkedHashMap<Long, Integer>();
+        Map<Long, Long> times = new HashMap<Long, Long>();
+        for (String term : CommentSearch.getTerms(userInfoEntity)) {
+            NavigableSet<Long> ids = terms.get(term);
+            if (ids == null) {
+                continue;
+            }
+
+            // Ids grow with time, so the newest matches are the last ones, like the time ordered Datastore query.
+            int candidates = 0;
+            for (long id : ids.descendingSet()) {
+                Entity commentEntity = comments.get(id);
+                if (commentEntity == null) {
+                    continue;
+                }
+                if (candidates++ >= CommentSearch.MAX_CANDIDATES) {
+                    break;
+                }
+                Integer score = scores.get(id);
+                scores.put(id, score == null ? 1 : score + 1);
+                times.put(id, getLong(commentEntity, "time"));
+            }
+        }
+        List<Long> ranked = CommentSearch.rank(scores, times);
+
+        int from = (int) Math.min(ranked.size(), (page - 1) * limit);
+        int to = (int) Math.min(ranked.size(), page * limit);
+        List<Entity> entities = new ArrayList<Entity>();
+        for (long id : ranked.subList(from, to)) {
+            Entity commentEntity = comments.get(id);
+            if (commentEntity != null) {
+                entities.add(commentEntity.clone());
+            }
+        }
+
+        String next = null;
+        if (to < ranked.size()) {
+            next = "search-" + (page + 1);
+        }
+        return new Page(entities, next);
+    }
+
+    @Override
+    public Map<Long, VoteCount> getVotes(List<Entity> commentEntities, long version) {
+        Map<Long, VoteCount> counts = new HashMap<Long, VoteCount>();
+        for (Entity commentEntity : commentEntities) {
+            long id = commentEntity.getKey().getId();
+            // Read the stored comment, since the given one may come from a cache.
+            Entity stored = comments.getOrDefault(id, commentEntity);
+            counts.put(id, new VoteCount(getLong(stored, "thumbsup"), getLong(stored, "thumbsdown")));
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<Long, Vote> getViewerVotes(String userId, List<Long> commentIds) {
+        Map<Long, Vote> viewerVotes = new HashMap<Long, Vote>();
+        for (long commentId : commentIds) {
+            Vote vote = votes.get(userId + ":" + commentId);
+            if (vote != null) {
+                viewerVotes.put(commentId, vote);
+            }
+        }
+        return viewerVotes;
+    }
+
+    @Override
+    public long add(Entity commentEntity) {
+        Entity stored = new Entity("Comment", nextId.incrementAndGet());
+        stored.setPropertiesFrom(commentEntity);
+        // The Datastore stores every integer as a long.
+        for (Map.Entry<String, Object> property : commentEntity.getProperties().entrySet()) {
+            if (property.getValue() instanceof Integer) {
+                stored.setProperty(property.getKey(), ((Integer) property.getValue()).longValue());
+            }
+        }
+
+        synchronized (writeLock) {
+            comments.put(stored.getKey().getId(), stored);
+            index(stored);
+            indexTerms(stored);
+            version.incrementAndGet();
+        }
+        return stored.getKey().getId();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean delete(long id) {
+        synchronized (writeLock) {
+            Entity stored = comments.remove(id);
+            if (stored == null) {
+                return false;
+            }
+
+            unindex(stored);
+            List<String> commentTerms = (List<String>) stored.getProperty("searchTerms");
+            if (commentTerms != null) {
+                for (String term : commentTerms) {
+                    NavigableSet<Long> ids = terms.get(term);
+                    if (ids != null) {
+                        ids.remove(id);
+                    }
+                }
+            }
+            version.incrementAndGet();
+            return true;
+        }
+    }
+
+    @Override
+    public List<Long> deleteAll(List<Long> ids) {
+        List<Long> deleted = new ArrayList<Long>();
+        for (long id : ids) {
+            if (delete(id)) {
+                deleted.add(id);
+            }
+        }
+        return deleted;
+    }
+
+    @Override
+    public int sweepDeleted(List<Long> ids, int limit) {
+        int removed = 0;
+        synchronized (writeLock) {
+            Iterator<Vote> iterator = votes.values().iterator();
+            while (iterator.hasNext() && removed < limit) {
+                if (ids.contains(iterator.next().getCommentId())) {
+                    iterator.remove();
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public boolean setSentiment(long id, double sentiment) {
+        synchronized (writeLock) {
+            Entity stored = comments.get(id);
+            if (stored == null) {
+                return false;
+            }
+
+            Entity updated = stored.clone();
+            updated.setProperty("sentiment", sentiment);
+            replace(stored, updated);
+            return true;
+        }
+    }
+
+    @Override
+    public int countLegacyComments(int limit) {
+        // The total is the size of the map, so every comment is always counted.
+        return 0;
+    }
+
+    @Override
+    public int foldPendingVotes(int limit) {
+        // Votes are applied to the comment right away, so there is never anything to fold.
+        return 0;
+    }
+
+    @Override
+    public boolean vote(String userId, long commentId, boolean thumbsUp) {
+        VoteBatch batch = new VoteBatch();
+        batch.toggle(commentId, thumbsUp);
+        return !vote(userId, batch).isEmpty();
+    }
+
+    @Override
+    public List<Entity> vote(String userId, VoteBatch batch) {
+        List<Entity> voted = new ArrayList<Entity>();
+        synchronized (writeLock) {
+            for (long commentId : batch.getCommentIds()) {
+                Entity stored = comments.get(commentId);
+                if (stored == null) {
+                    continue;
+                }
+
+                String voteKey = userId + ":" + commentId;
+                Vote vote = votes.getOrDefault(voteKey, new Vote(userId, commentId, false, false));
+                long thumbsup = getLong(stored, "thumbsup");
+                long thumbsdown = getLong(stored, "thumbsdown");
+                if (batch.isLikeToggled(commentId)) {
+                    thumbsup += vote.isLiked() ? -1 : 1;
+                    vote.toggleLiked();
+                }
+                if (batch.isUnlikeToggled(commentId)) {
+                    thumbsdown += vote.isUnliked() ? -1 : 1;
+                    vote.toggleUnliked();
+                }
+
+                if (vote.isLiked() || vote.isUnliked()) {
+                    votes.put(voteKey, vote);
+                } else {
+                    votes.remove(voteKey);
+                }
+
+                Entity updated = stored.clone();
+                updated.setProperty("thumbsup", thumbsup);
+                updated.setProperty("thumbsdown", thumbsdown);
+                updated.setProperty("popularity", thumbsup - thumbsdown);
+                updated.setProperty("hot", HotScore.compute(thumbsup, thumbsdown, getLong(stored, "time")));
+                replace(stored, updated);
+                voted.add(updated);
+            }
+        }
+        return voted;
+    }
+
+    // Replaces a stored comment with an updated copy instead of changing it, since readers may be holding on to the
+    // stored entity. Must be called while holding the write lock.
+    private void replace(Entity stored, Entity updated) {
+        unindex(stored);
+        comments.put(updated.getKey().getId(), updated);
+        index(updated);
+        version.incrementAndGet();
+    }
+
+    // Returns the index entries of the filter's order that come after the cursor, or all of them without a cursor.
+    private NavigableSet<IndexEntry> getEntries(String filter, String cursor) {
+        NavigableSet<IndexEntry> index = indexes.get(filter);
+        if (cursor == null || cursor.isEmpty()) {
+            return index;
+        }
+        return index.tailSet(decode(filter, cursor), false);
+    }
+
+    // Adds the comment to the index of every order. Like the Datastore, comments without the sorted property are left
+    // out of that order.
+    private void index(Entity commentEntity) {
+        for (Map.Entry<String, Order> order : ORDERS.entrySet()) {
+            Comparable<Object> value = (Comparable<Object>) commentEntity.getProperty(order.getValue().property);
+            if (value != null) {
+                indexes.get(order.getKey()).add(new IndexEntry(value, commentEntity.getKey().getId()));
+            }
+        }
+    }
+
+    private void unindex(Entity commentEntity) {
+        for (Map.Entry<String, Order> order : ORDERS.entrySet()) {
+            Comparable<Object> value = (Comparable<Object>) commentEntity.getProperty(order.getValue().property);
+            if (value != null) {
+                indexes.get(order.getKey()).remove(new IndexEntry(value, commentEntity.getKey().getId()));
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void indexTerms(Entity commentEntity) {
+        List<String> commentTerms = (List<String>) commentEntity.getProperty("searchTerms");
+        if (commentTerms == null) {
+            return;
+        }
+
+        for (String term : commentTerms) {
+            terms.computeIfAbsent(term, key -> new ConcurrentSkipListSet<Long>()).add(commentEntity.getKey().getId());
+        }
+    }
+
+    private static String getFilter(Entity userInfoEntity) {
+        String filter = (String) userInfoEntity.getProperty("filter");
+        return ORDERS.containsKey(filter) ? filter : "alphabetical";
+    }
+
+    private static long getLong(Entity commentEntity, String property) {
+        Object value = commentEntity.getProperty(property);
+        return value == null ? 0 : ((Number) value).longValue();
+    }
+
+    // Returns a web safe cursor that points right after the index entry. It only works with the order it came from.
+    private static String encode(String filter, IndexEntry entry) {
+        String position = filter + ":" + entry.id + ":" + entry.value;
+        return Base64.getUrlEncoder().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Throws IllegalArgumentException, like the Datastore does, if the cursor is not valid or came from another order.
+    private static IndexEntry decode(String filter, String cursor) {
+        String[] position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":", 3);
+        if (position.length != 3 || !position[0].equals(filter)) {
+            throw new IllegalArgumentException("Cursor does not belong to the " + filter + " order");
+        }
+
+        long id = Long.parseLong(position[1]);
+        String property = ORDERS.get(filter).property;
+        Object value = position[2];
+        if (property.equals("sentiment") || property.equals("hot")) {
+            value = Double.parseDouble(position[2]);
+        } else if (!property.equals("name")) {
+            value = Long.parseLong(position[2]);
+        }
+        return new IndexEntry((Comparable<Object>) value, id);
+    }
+}
@@ -0,0 +1,98 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import com.google.appengine.api.datastore.Entity;
+
+/**
+ * Keeps the UserInfo entities in the process, for benchmarks and load tests. Entities are copied on the way in and out
+ * like the Datastore does, with their numbers widened the same way, and updates run atomically per user, which matches a Datastore transaction on one entity.
+ */
+final class InMemoryUserStore implements UserStore {
+
+    private final Map<String, Entity> users = new ConcurrentHashMap<String, Entity>();
+    // User ids keyed by lowercased username, the equivalent of the Username entities.
+    private final Map<String, String> usernames = new ConcurrentHashMap<String, String>();
+
+    @Override
+    public Entity get(String id) {
+        Entity userInfoEntity = users.get(id);
+        return userInfoEntity == null ? null : userInfoEntity.clone();
+    }
+
+    @Override
+    public void put(Entity userInfoEntity) {
+        String id = userInfoEntity.getKey().getName();
+        users.put(id, StoredEntities.copy(userInfoEntity));
+
+        String username = (String) userInfoEntity.getProperty("username");
+        if (username != null) {
+            usernames.put(normalize(username), id);
+        }
+    }
+
+    @Override
+    public Entity update(String id, Consumer<Entity> change) {
+        // The change runs while the entry is locked, and an exception leaves the stored entity as it was.
+        Entity updated = users.computeIfPresent(id, (key, stored) -> {
+            Entity userInfoEntity = stored.clone();
+            change.accept(userInfoEntity);
+            return StoredEntities.copy(userInfoEntity);
+        });
+        if (updated == null) {
+            return null;
+        }
+        return updated.clone();
+    }
+
+    @Override
+    public boolean register(Entity userInfoEntity) {
+        String id = userInfoEntity.getKey().getName();
+        String username = normalize((String) userInfoEntity.getProperty("username"));
+
+        // Claims are rare, so one lock over the whole claim keeps it simple.
+        synchronized (usernames) {
+            String owner = usernames.putIfAbsent(username, id);
+            if (owner != null && !owner.equals(id)) {
+                return false;
+            }
+
+            Entity previous = users.put(id, StoredEntities.copy(userInfoEntity));
+            String previousUsername = previous == null ? null : (String) previous.getProperty("username");
+            if (previousUsername != null && !normalize(previousUsername).equals(username)) {
+                usernames.remove(normalize(previousUsername), id);
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public boolean isUsernameTaken(String username) {
+        return usernames.containsKey(normalize(username));
+    }
+
+    @Override
+    public void refreshUsernames() {
+        // The usernames map is always up to date.
+    }
+
+    private static String normalize(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,77 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.PreparedQuery;
+
+/**
+ * A DatastoreService that records the latency of every call in Metrics, labelled with the name of the method. Queries
+ * are timed when they are run; for the lazy asIterable and asIterator that only covers the first batch.
+ */
+public final class MeteredDatastore {
+
+    private static final DatastoreService datastore = wrap(DatastoreService.class,
+            DatastoreServiceFactory.getDatastoreService(), "");
+
+    private MeteredDatastore() {}
+
+    // Returns the shared metered DatastoreService, to be used wherever DatastoreServiceFactory would have been.
+    public static DatastoreService getDatastoreService() {
+        return datastore;
+    }
+
+    private static <T> T wrap(Class<T> type, T target, String prefix) {
+        InvocationHandler handler = (proxy, method, args) -> invoke(target, method, args, prefix);
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args, String prefix) throws Throwable {
+        // Transactions are handed back as they are, because the Datastore casts them to its own implementation when
+        // they are passed back in.
+        if (method.getDeclaringClass() == Object.class || method.getName().startsWith("getCurrentTransaction")
+                || method.getName().equals("getActiveTransactions") || method.getName().equals("getDatastoreServiceConfig")) {
+            return call(target, method, args);
+        }
+
+        // Preparing a query does not touch the Datastore, only running it does.
+        if (method.getName().equals("prepare")) {
+            return wrap(PreparedQuery.class, (PreparedQuery) call(target, method, args), "query.");
+        }
+
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Object result = call(target, method, args);
+            failed = false;
+            return result;
+        } finally {
+            Metrics.recordDependency("datastore", prefix + method.getName(), start, failed);
+        }
+    }
+
+    private static Object call(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
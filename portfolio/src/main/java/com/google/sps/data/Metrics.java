@@ -0,0 +1,191 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms and counters for every servlet and every call to a backend service, written in the Prometheus
+ * text format by MetricsServlet. Recording a value is a binary search over the bucket bounds and two LongAdder
+ * increments, so it can stay on in production.
+ */
+public final class Metrics {
+
+    // Upper bounds of the histogram buckets in microseconds: 1, 2, 3, 4, 6, 8, 12, ... up to about 134 seconds, which
+    // keeps every bucket within 50% of its neighbours at any scale, like a two bucket per octave HDR histogram.
+    private static final long[] BOUNDS = createBounds(27);
+    // Upper bound on the number of distinct servlet paths, so that requests for unknown paths cannot grow the registry.
+    private static final int MAX_SERVLETS = 100;
+
+    private static final Map<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<String, LongAdder>();
+    // The servlet paths that have their own series, counted apart from the dependency histograms.
+    private static final Set<String> servlets = ConcurrentHashMap.newKeySet();
+
+    private Metrics() {}
+
+    /** Counts of latencies per bucket, along with their sum */
+    private static final class Histogram {
+        private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];
+        private final LongAdder sumMicros = new LongAdder();
+
+        private Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        private void record(long micros) {
+            int index = Arrays.binarySearch(BOUNDS, micros);
+            // A value between two bounds belongs to the bucket of the next larger bound.
+            buckets[index >= 0 ? index : -index - 1].increment();
+            sumMicros.add(micros);
+        }
+    }
+
+    // Records how long a request to the servlet took and counts it with its status code.
+    public static void recordRequest(String servlet, int status, long startNanos) {
+        if (!servlets.contains(servlet)) {
+            // Concurrent first requests may add a few paths past the limit, which still keeps the registry bounded.
+            if (servlets.size() >= MAX_SERVLETS) {
+                servlet = "other";
+            } else {
+                servlets.add(servlet);
+            }
+        }
+        record(requestKey(servlet), startNanos);
+        count("sps_requests_total{servlet=\"" + escape(servlet) + "\",status=\"" + status + "\"}");
+    }
+
+    // Records how long a call to a backend service took, and counts it as an error if it threw.
+    public static void recordDependency(String dependency, String call, long startNanos, boolean failed) {
+        String labels = "{dependency=\"" + dependency + "\",call=\"" + call + "\"}";
+        record("sps_dependency_duration_seconds" + labels, startNanos);
+        if (failed) {
+            count("sps_dependency_errors_total" + labels);
+        }
+    }
+
+    // Writes every metric in the Prometheus text exposition format.
+    public static void write(Writer out) throws IOException {
+        writeHistograms(out, "sps_request_duration_seconds", "Time spent serving a request, by servlet.");
+        writeHistograms(out, "sps_dependency_duration_seconds", "Time spent in a call to a backend service.");
+        writeCounters(out, "sps_requests_total", "Requests served, by servlet and status code.");
+        writeCounters(out, "sps_dependency_errors_total", "Calls to a backend service that failed.");
+
+        out.write("# HELP sps_rate_limited_total Requests rejected for going over their budget, by endpoint.\n");
+        out.write("# TYPE sps_rate_limited_total counter\n");
+        for (RateLimiter limiter : RateLimiter.getAll()) {
+            writeSample(out, "sps_rate_limited_total{endpoint=\"" + limiter.getName() + "\"}", limiter.getRejections());
+        }
+
+        out.write("# HELP sps_cache_lookups_total Lookups in the in-process caches, by result.\n");
+        out.write("# TYPE sps_cache_lookups_total counter\n");
+        writeSample(out, "sps_cache_lookups_total{cache=\"first_page\",result=\"hit\"}", FirstPageCache.getHits());
+        writeSample(out, "sps_cache_lookups_total{cache=\"first_page\",result=\"miss\"}", FirstPageCache.getMisses());
+        writeSample(out, "sps_cache_lookups_total{cache=\"bootstrap\",result=\"hit\"}", BootstrapCache.getHits());
+        writeSample(out, "sps_cache_lookups_total{cache=\"bootstrap\",result=\"miss\"}", BootstrapCache.getMisses());
+        writeSample(out, "sps_cache_lookups_total{cache=\"translation\",result=\"memory_hit\"}",
+                TranslationCache.getMemoryHits());
+        writeSample(out, "sps_cache_lookups_total{cache=\"translation\",result=\"datastore_hit\"}",
+                TranslationCache.getDatastoreHits());
+        writeSample(out, "sps_cache_lookups_total{cache=\"translation\",result=\"miss\"}", TranslationCache.getMisses());
+
+        out.write("# HELP sps_cache_evictions_total Entries dropped from the full in-process caches.\n");
+        out.write("# TYPE sps_cache_evictions_total counter\n");
+        writeSample(out, "sps_cache_evictions_total{cache=\"bootstrap\"}", BootstrapCache.getEvictions());
+        writeSample(out, "sps_cache_evictions_total{cache=\"translation\"}", TranslationCache.getEvictions());
+    }
+
+    private static void record(String key, long startNanos) {
+        long micros = (System.nanoTime() - startNanos) / 1000;
+        histograms.computeIfAbsent(key, k -> new Histogram()).record(micros);
+    }
+
+    private static void count(String key) {
+        counters.computeIfAbsent(key, k -> new LongAdder()).increment();
+    }
+
+    private static void writeHistograms(Writer out, String name, String help) throws IOException {
+        out.write("# HELP " + name + " " + help + "\n");
+        out.write("# TYPE " + name + " histogram\n");
+        for (String key : sortedKeys(histograms, name)) {
+            Histogram histogram = histograms.get(key);
+            String labels = key.substring(name.length() + 1, key.length() - 1);
+
+            long cumulative = 0;
+            for (int i = 0; i < BOUNDS.length; i++) {
+                cumulative += histogram.buckets[i].sum();
+                writeSample(out, name + "_bucket{" + labels + ",le=\"" + BOUNDS[i] / 1e6 + "\"}", cumulative);
+            }
+            cumulative += histogram.buckets[BOUNDS.length].sum();
+            writeSample(out, name + "_bucket{" + labels + ",le=\"+Inf\"}", cumulative);
+            out.write(name + "_sum{" + labels + "} " + histogram.sumMicros.sum() / 1e6 + "\n");
+            writeSample(out, name + "_count{" + labels + "}", cumulative);
+        }
+    }
+
+    private static void writeCounters(Writer out, String name, String help) throws IOException {
+        out.write("# HELP " + name + " " + help + "\n");
+        out.write("# TYPE " + name + " counter\n");
+        for (String key : sortedKeys(counters, name)) {
+            writeSample(out, key, counters.get(key).sum());
+        }
+    }
+
+    private static void writeSample(Writer out, String series, long value) throws IOException {
+        out.write(series + " " + value + "\n");
+    }
+
+    private static List<String> sortedKeys(Map<String, ?> metrics, String name) {
+        List<String> keys = new ArrayList<String>();
+        for (String key : metrics.keySet()) {
+            if (key.startsWith(name + "{")) {
+                keys.add(key);
+            }
+        }
+        Collections.sort(keys);
+        return keys;
+    }
+
+    private static String requestKey(String servlet) {
+        return "sps_request_duration_seconds{servlet=\"" + escape(servlet) + "\"}";
+    }
+
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static long[] createBounds(int octaves) {
+        long[] bounds = new long[2 * octaves + 1];
+        for (int octave = 0; octave <= octaves; octave++) {
+            bounds[2 * octave] = 1L << octave;
+            if (octave < octaves) {
+                bounds[2 * octave + 1] = 3L << octave;
+            }
+        }
+        Arrays.sort(bounds);
+        return bounds;
+    }
+}
@@ -0,0 +1,118 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * An in-process token bucket per user and endpoint. Each bucket is a single AtomicLong holding the time at which it
+ * will be full again, so taking a token is one compare-and-set and never blocks. Budgets are per instance.
+ */
+public final class RateLimiter {
+
+    /** Thumbs up and thumbs down, which share a budget since they contend on the same comments */
+    public static final RateLimiter VOTES = new RateLimiter("vote", 60, 10);
+    /** Posting a comment */
+    public static final RateLimiter POSTS = new RateLimiter("post", 6, 3);
+    /** Deleting a comment */
+    public static final RateLimiter DELETES = new RateLimiter("delete", 30, 10);
+
+    private static final List<RateLimiter> limiters = Arrays.asList(VOTES, POSTS, DELETES);
+
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+    // Full buckets are dropped once there are this many, since a missing bucket is the same as a full one.
+    private static final int MAX_BUCKETS = 10000;
+
+    private final String name;
+    private final int burst;
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<String, AtomicLong>();
+    private final LongAdder rejections = new LongAdder();
+
+    // Allows perMinute requests a minute on average, and up to burst of them at once.
+    private RateLimiter(String name, int perMinute, int burst) {
+        this.name = name;
+        this.burst = burst;
+        this.intervalNanos = TimeUnit.MINUTES.toNanos(1) / perMinute;
+        this.burstNanos = intervalNanos * burst;
+    }
+
+    // Takes a token from the bucket of the key. Returns false when it is empty, after answering with a 429 that tells
+    // the client how long to wait before a token is available again.
+    public boolean check(String key, HttpServletResponse response) throws IOException {
+        return check(key, 1, response);
+    }
+
+    // Takes the given number of tokens from the bucket of the key, for a request that does that many actions at once.
+    // Takes none and answers with a 429 if there are not that many. More tokens than the burst are never available.
+    public boolean check(String key, int tokens, HttpServletResponse response) throws IOException {
+        long retryAfterNanos = tryAcquire(key, tokens);
+        if (retryAfterNanos == 0) {
+            return true;
+        }
+
+        rejections.increment();
+        response.setHeader("Retry-After", Long.toString(TimeUnit.NANOSECONDS.toSeconds(retryAfterNanos) + 1));
+        response.sendError(SC_TOO_MANY_REQUESTS);
+        return false;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Returns the largest number of tokens a bucket holds.
+    public int getBurst() {
+        return burst;
+    }
+
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    public static List<RateLimiter> getAll() {
+        return limiters;
+    }
+
+    // Returns 0 if the tokens were taken, or else how long until they are available.
+    long tryAcquire(String key, int tokens) {
+        long now = System.nanoTime();
+        if (buckets.size() >= MAX_BUCKETS) {
+            buckets.values().removeIf(fullAt -> fullAt.get() - now <= 0);
+        }
+
+        AtomicLong fullAt = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        while (true) {
+            long current = fullAt.get();
+            // A bucket that has been full for a while holds no more than burst tokens.
+            long next = (current - now < 0 ? now : current) + intervalNanos * tokens;
+            if (next - now > burstNanos) {
+                return next - now - burstNanos;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+}
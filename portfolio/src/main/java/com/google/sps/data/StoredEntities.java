@@ -0,0 +1,41 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.Map;
+import com.google.appengine.api.datastore.Entity;
+
+/**
+ * Copies entities the way the Datastore reads them back. The Datastore stores every integer as a long and every
+ * floating point number as a double, so code that reads stored entities casts to those types.
+ */
+final class StoredEntities {
+
+    private StoredEntities() {}
+
+    // Returns a copy of the entity with its int, short and byte values widened to long and its float values to double.
+    static Entity copy(Entity entity) {
+        Entity copy = entity.clone();
+        for (Map.Entry<String, Object> property : entity.getProperties().entrySet()) {
+            Object value = property.getValue();
+            if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                copy.setProperty(property.getKey(), ((Number) value).longValue());
+            } else if (value instanceof Float) {
+                copy.setProperty(property.getKey(), ((Float) value).doubleValue());
+            }
+        }
+        return copy;
+    }
+}
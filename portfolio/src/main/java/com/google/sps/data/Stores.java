@@ -0,0 +1,48 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+/**
+ * Picks the storage engine from the sps.storage.engine system property. "datastore", the default, keeps everything in
+ * the Datastore. "memory" keeps everything in the process, which is only meant for benchmarks and load tests because
+ * nothing survives a restart or is shared between instances.
+ */
+public final class Stores {
+
+    private static final String ENGINE = System.getProperty("sps.storage.engine", "datastore");
+
+    private static final CommentStore comments;
+    private static final UserStore users;
+
+    static {
+        if (ENGINE.equals("memory")) {
+            comments = new InMemoryCommentStore();
+            users = new InMemoryUserStore();
+        } else {
+            comments = new DatastoreCommentStore();
+            users = new DatastoreUserStore();
+        }
+    }
+
+    private Stores() {}
+
+    public static CommentStore comments() {
+        return comments;
+    }
+
+    public static UserStore users() {
+        return users;
+    }
+}
@@ -0,0 +1,191 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.CompositeFilterOperator;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Text;
+
+/** Two tier cache of comment translations: a bounded in-process LRU in front of Translation entities */
+public final class TranslationCache {
+
+    // Maximum number of translations kept in memory before the least recently used one is evicted.
+    private static final int MAX_ENTRIES = 1000;
+
+    private static final AtomicLong memoryHits = new AtomicLong();
+    private static final AtomicLong datastoreHits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong evictions = new AtomicLong();
+
+    private static final Map<String, String> cache = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            if (size() > MAX_ENTRIES) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private TranslationCache() {}
+
+    // Returns the cached translations of the given comment contents, keyed by comment id. Comments that were never
+    // translated to that language are left out. Everything missing from memory is read in a single batch get.
+    public static Map<Long, String> getAll(Map<Long, String> contents, String language) {
+        Map<Long, String> translations = new HashMap<Long, String>();
+        Map<Key, Long> missingKeys = new HashMap<Key, Long>();
+
+        synchronized (cache) {
+            for (Map.Entry<Long, String> content : contents.entrySet()) {
+                String name = getName(content.getKey(), language, content.getValue());
+                String translated = cache.get(name);
+                if (translated != null) {
+                    memoryHits.incrementAndGet();
+                    translations.put(content.getKey(), translated);
+                } else {
+                    missingKeys.put(KeyFactory.createKey("Translation", name), content.getKey());
+                }
+            }
+        }
+
+        if (missingKeys.isEmpty()) {
+            return translations;
+        }
+
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        Map<Key, Entity> translationEntities = datastore.get(missingKeys.keySet());
+        misses.addAndGet(missingKeys.size() - translationEntities.size());
+        datastoreHits.addAndGet(translationEntities.size());
+
+        synchronized (cache) {
+            for (Entity translationEntity : translationEntities.values()) {
+                String translated = ((Text) translationEntity.getProperty("text")).getValue();
+                cache.put(translationEntity.getKey().getName(), translated);
+                translations.put(missingKeys.get(translationEntity.getKey()), translated);
+            }
+        }
+
+        return translations;
+    }
+
+    // Stores the translations of the given comment contents in memory and in the datastore with a single batch put.
+    public static void putAll(Map<Long, String> contents, Map<Long, String> translations, String language) {
+        List<Entity> translationEntities = new ArrayList<Entity>();
+
+        synchronized (cache) {
+            for (Map.Entry<Long, String> translation : translations.entrySet()) {
+                String name = getName(translation.getKey(), language, contents.get(translation.getKey()));
+                cache.put(name, translation.getValue());
+
+                Entity translationEntity = new Entity("Translation", name);
+                translationEntity.setUnindexedProperty("text", new Text(translation.getValue()));
+                translationEntities.add(translationEntity);
+            }
+        }
+
+        if (translationEntities.isEmpty()) {
+            return;
+        }
+
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        datastore.put(translationEntities);
+    }
+
+    // Stores the translations of the given comment contents in memory only.
+    public static void putAllInMemory(Map<Long, String> contents, Map<Long, String> translations, String language) {
+        synchronized (cache) {
+            for (Map.Entry<Long, String> translation : translations.entrySet()) {
+                cache.put(getName(translation.getKey(), language, contents.get(translation.getKey())), translation.getValue());
+            }
+        }
+    }
+
+    // Deletes up to limit translations of the deleted comments, in every language and of every version of their
+    // content. Returns how many were deleted.
+    public static int deleteAll(List<Long> commentIds, int limit) {
+        synchronized (cache) {
+            Iterator<String> names = cache.keySet().iterator();
+            while (names.hasNext()) {
+                if (commentIds.contains(getCommentId(names.next()))) {
+                    names.remove();
+                }
+            }
+        }
+
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        List<Key> translationKeys = new ArrayList<Key>();
+        for (long commentId : commentIds) {
+            if (translationKeys.size() >= limit) {
+                break;
+            }
+
+            // The key names of a comment's translations all start with its id and a colon, and ';' sorts right after
+            // ':', so they are the keys in that range.
+            Query query = new Query("Translation").setFilter(CompositeFilterOperator.and(
+                    new FilterPredicate(Entity.KEY_RESERVED_PROPERTY, FilterOperator.GREATER_THAN_OR_EQUAL,
+                            KeyFactory.createKey("Translation", commentId + ":")),
+                    new FilterPredicate(Entity.KEY_RESERVED_PROPERTY, FilterOperator.LESS_THAN,
+                            KeyFactory.createKey("Translation", commentId + ";"))))
+                    .setKeysOnly();
+            FetchOptions options = FetchOptions.Builder.withLimit(limit - translationKeys.size());
+            for (Entity translationEntity : datastore.prepare(query).asList(options)) {
+                translationKeys.add(translationEntity.getKey());
+            }
+        }
+        datastore.delete(translationKeys);
+        return translationKeys.size();
+    }
+
+    public static long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    public static long getDatastoreHits() {
+        return datastoreHits.get();
+    }
+
+    public static long getMisses() {
+        return misses.get();
+    }
+
+    public static long getEvictions() {
+        return evictions.get();
+    }
+
+    // Builds the key name of a translation out of the comment id, the target language and a hash of the content,
+    // so that an edited comment never gets served a translation of its old content.
+    private static String getName(long commentId, String language, String content) {
+        return commentId + ":" + language + ":" + Digests.shortHash(content);
+    }
+
+    private static long getCommentId(String name) {
+        return Long.parseLong(name.substring(0, name.indexOf(':')));
+    }
+}
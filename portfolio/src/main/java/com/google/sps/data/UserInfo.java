@@ -14,30 +14,11 @@
 
 package com.google.sps.data;
 
-import java.io.IOException;
-import javax.servlet.annotation.WebServlet;
-import javax.servlet.http.HttpServlet;
-import javax.servlet.http.HttpServletRequest;
-import javax.servlet.http.HttpServletResponse;
-import java.util.ArrayList;
 import java.util.List;
-import com.google.gson.Gson;
 import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
-import com.google.sps.data.Comment;
-import com.google.appengine.api.datastore.PreparedQuery;
-import com.google.appengine.api.datastore.Query;
-import com.google.appengine.api.datastore.Query.SortDirection;
 import com.google.appengine.api.datastore.Key;
-import com.google.appengine.api.datastore.KeyFactory;
-import com.google.appengine.api.datastore.Query.FilterOperator;
-import com.google.appengine.api.datastore.Query.Filter;
-import com.google.appengine.api.datastore.Query.FilterPredicate;
-import com.google.appengine.api.users.UserService;
-import com.google.appengine.api.users.UserServiceFactory;
 import com.google.appengine.api.datastore.Transaction;
-import com.google.appengine.api.datastore.TransactionOptions;
 
 /** User Info for each registered user */
 public final class UserInfo {
@@ -64,48 +45,40 @@ public final class UserInfo {
         this.unliked = (List<Key>) userInfoEntity.getProperty("unliked");
     }
 
-    public void addToLikedComments(Entity commentEntity) {
-        if (this.liked == null) {
-            this.liked =  new ArrayList<Key>();
-        }
-
-        this.liked.add(commentEntity.getKey());
-        return;
-    }
-
+    // The liked and unliked lists only hold votes cast before they were stored as Vote entities. They are read to
+    // migrate those votes and shrink as the user votes again on the same comments.
     public void removeFromLikedComments(Entity commentEntity) {
-        this.liked.remove(commentEntity.getKey());
+        if (this.liked != null) {
+            this.liked.remove(commentEntity.getKey());
+        }
         return;
     }
 
     public boolean isLikedComment(Entity commentEntity) {
-        Key commentKey = commentEntity.getKey();
-
-        return liked != null && liked.contains(commentKey);
+        return isLikedComment(commentEntity.getKey());
     }
 
-    public void addToUnlikedComments(Entity commentEntity) {
-        if (this.unliked == null) {
-            this.unliked =  new ArrayList<Key>();
-        }
-
-        this.unliked.add(commentEntity.getKey());
-        return;
+    public boolean isLikedComment(Key commentKey) {
+        return liked != null && liked.contains(commentKey);
     }
 
     public void removeFromUnlikedComments(Entity commentEntity) {
-        this.unliked.remove(commentEntity.getKey());
+        if (this.unliked != null) {
+            this.unliked.remove(commentEntity.getKey());
+        }
         return;
     }
 
     public boolean isUnlikedComment(Entity commentEntity) {
-        Key commentKey = commentEntity.getKey();
+        return isUnlikedComment(commentEntity.getKey());
+    }
 
+    public boolean isUnlikedComment(Key commentKey) {
         return unliked != null && unliked.contains(commentKey);
     }
 
     public void updateDatabase(Entity userInfoEntity, Transaction txn) {
-        DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
 
         // Update properties that can be changed.
         userInfoEntity.setProperty("unliked", this.unliked);
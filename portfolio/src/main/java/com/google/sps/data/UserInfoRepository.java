@@ -0,0 +1,165 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.servlet.http.HttpServletRequest;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+
+/**
+ * Looks up UserInfo entities by key. Every entity is read at most once per request, and can also be kept in a short
+ * lived process cache by setting the sps.userinfo.cache.ttl.millis system property to a positive value.
+ */
+public final class UserInfoRepository {
+
+    // Request attribute that holds the UserInfo entity of the current user once it has been read.
+    private static final String REQUEST_ATTRIBUTE = UserInfoRepository.class.getName();
+    // How long an entity stays in the process cache. Zero turns the cache off.
+    private static final long CACHE_TTL_MILLIS = Long.getLong("sps.userinfo.cache.ttl.millis", 0);
+
+    private static final Map<String, CachedUserInfo> cache = new ConcurrentHashMap<String, CachedUserInfo>();
+
+    private UserInfoRepository() {}
+
+    private static final class CachedUserInfo {
+        private final Entity userInfoEntity;
+        private final long expiresAt;
+
+        private CachedUserInfo(Entity userInfoEntity, long expiresAt) {
+            this.userInfoEntity = userInfoEntity;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    // Returns the UserInfo entity of the currently logged in user or null if the user is not logged in or registered.
+    public static Entity get(HttpServletRequest request) {
+        Entity userInfoEntity = (Entity) request.getAttribute(REQUEST_ATTRIBUTE);
+        if (userInfoEntity != null) {
+            return userInfoEntity;
+        }
+
+        String id = getCurrentUserId();
+        if (id == null) {
+            return null;
+        }
+
+        userInfoEntity = get(id);
+        if (userInfoEntity != null) {
+            request.setAttribute(REQUEST_ATTRIBUTE, userInfoEntity);
+        }
+        return userInfoEntity;
+    }
+
+    // Returns the UserInfo entity of the currently logged in user or a default one if the user is not logged in.
+    public static Entity getOrDefault(HttpServletRequest request) {
+        Entity userInfoEntity = get(request);
+        if (userInfoEntity == null) {
+            return createDefault();
+        }
+        return userInfoEntity;
+    }
+
+    // Returns the UserInfo entity with the given user id or null if that user is not registered.
+    public static Entity get(String id) {
+        if (CACHE_TTL_MILLIS > 0) {
+            CachedUserInfo cached = cache.get(id);
+            if (cached != null && cached.expiresAt > System.currentTimeMillis()) {
+                return cached.userInfoEntity.clone();
+            }
+        }
+
+        Entity userInfoEntity = Stores.users().get(id);
+        if (userInfoEntity != null) {
+            cache(userInfoEntity);
+        }
+        return userInfoEntity;
+    }
+
+    // Reads the UserInfo entity with the given user id inside the transaction, bypassing every cache. Only used by the
+    // Datastore stores.
+    public static Entity get(Transaction txn, String id) {
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        try {
+            return datastore.get(txn, getKey(id));
+        } catch (EntityNotFoundException e) {
+            return null;
+        }
+    }
+
+    // Stores the UserInfo entity of a user who registers and claims its username. Makes it visible to the rest of the
+    // request and to the process cache, or returns false if another user holds the username. The rest of the request
+    // sees the entity as it will be read back, with its numbers widened to long.
+    public static boolean register(HttpServletRequest request, Entity userInfoEntity) {
+        if (!Stores.users().register(userInfoEntity)) {
+            return false;
+        }
+        remember(request, StoredEntities.copy(userInfoEntity));
+        return true;
+    }
+
+    // Makes an entity that was written by a committed transaction visible to the request and to the process cache.
+    public static void remember(HttpServletRequest request, Entity userInfoEntity) {
+        request.setAttribute(REQUEST_ATTRIBUTE, userInfoEntity);
+        remember(userInfoEntity);
+    }
+
+    // Makes an entity that was written by a committed transaction visible to the process cache, and drops the cached
+    // bootstrap response that was built from the old one.
+    public static void remember(Entity userInfoEntity) {
+        cache(userInfoEntity);
+        BootstrapCache.invalidate(userInfoEntity.getKey().getName());
+    }
+
+    // Returns the id of the currently logged in user or null if the user is not logged in.
+    public static String getCurrentUserId() {
+        UserService userService = UserServiceFactory.getUserService();
+        if (!userService.isUserLoggedIn()) {
+            return null;
+        }
+        return userService.getCurrentUser().getUserId();
+    }
+
+    public static Key getKey(String id) {
+        return KeyFactory.createKey("UserInfo", id);
+    }
+
+    // Returns the settings used for users that are not logged in.
+    public static Entity createDefault() {
+        Entity defaultEntity = new Entity("UserInfo");
+        defaultEntity.setProperty("max", (long) 10);
+        defaultEntity.setProperty("page", (long) 1);
+        defaultEntity.setProperty("language", "en");
+        defaultEntity.setProperty("filter", "recent");
+        defaultEntity.setProperty("searchBy", "name");
+        return defaultEntity;
+    }
+
+    // Caches a copy of the entity as the Datastore would read it back, so a hit casts the same as a read.
+    private static void cache(Entity userInfoEntity) {
+        if (CACHE_TTL_MILLIS > 0) {
+            String id = userInfoEntity.getKey().getName();
+            Entity stored = StoredEntities.copy(userInfoEntity);
+            cache.put(id, new CachedUserInfo(stored, System.currentTimeMillis() + CACHE_TTL_MILLIS));
+        }
+    }
+}
@@ -0,0 +1,239 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import javax.servlet.http.HttpServletRequest;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.appengine.api.datastore.Entity;
+
+/**
+ * Applies partial updates to the preferences stored in a UserInfo entity. Every update is a single atomic
+ * read-modify-write, so settings changed at the same time from different tabs or forms do not overwrite each other.
+ */
+public final class UserPreferences {
+
+    private static final List<String> FILTERS = Arrays.asList("recent", "oldest", "top", "bottom", "hot",
+            "alphabetical", "positive", "negative");
+    private static final List<String> SEARCH_BY = Arrays.asList("name", "username", "content");
+    // The largest number of comments a page can show.
+    private static final long MAX_PAGE_SIZE = 100;
+
+    private UserPreferences() {}
+
+    // Applies the patch to the UserInfo entity of the current user in one transaction and returns the updated entity,
+    // or null if the user is not logged in or not registered. Throws IllegalArgumentException if the patch is invalid.
+    //
+    // The patch may hold any of filter, searchBy, searchInput, max, language and where. Setting reset to true puts the
+    // filter, search, max and language back to their defaults before the other fields are applied. Pages are changed
+    // with direction ("next" together with the cursor of the next page, or "prev") or with page, the page number
+    // to jump to.
+    public static Entity update(HttpServletRequest request, JsonObject patch) {
+        String id = UserInfoRepository.getCurrentUserId();
+        if (id == null) {
+            return null;
+        }
+
+        Entity userInfoEntity = Stores.users().update(id, entity -> apply(entity, patch));
+        if (userInfoEntity != null) {
+            UserInfoRepository.remember(request, userInfoEntity);
+        }
+        return userInfoEntity;
+    }
+
+    // Applies the patch like update does for the settings forms, which ignore values that are not allowed. Returns
+    // false if nothing was stored.
+    public static boolean tryUpdate(HttpServletRequest request, JsonObject patch) {
+        try {
+            return update(request, patch) != null;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    // Returns the preferences stored in the UserInfo entity, in the same format as the patch.
+    public static JsonObject toJson(Entity userInfoEntity) {
+        JsonObject json = new JsonObject();
+        json.addProperty("filter", (String) Optional.ofNullable(userInfoEntity.getProperty("filter")).orElse("recent"));
+        json.addProperty("searchBy", (String) Optional.ofNullable(userInfoEntity.getProperty("searchBy")).orElse("name"));
+        json.addProperty("searchInput", (String) userInfoEntity.getProperty("searchInput"));
+        json.addProperty("max", (long) Optional.ofNullable(userInfoEntity.getProperty("max")).orElse(10L));
+        json.addProperty("language", (String) Optional.ofNullable(userInfoEntity.getProperty("language")).orElse("en"));
+        json.addProperty("where", (String) userInfoEntity.getProperty("where"));
+        json.addProperty("page", (long) Optional.ofNullable(userInfoEntity.getProperty("page")).orElse(1L));
+        return json;
+    }
+
+    // Applies every field of the patch to the UserInfo entity. Nothing is changed if any of the fields is invalid.
+    private static void apply(Entity userInfoEntity, JsonObject patch) {
+        // Validate everything first, so that a bad field does not leave a half applied patch behind.
+        for (Map.Entry<String, JsonElement> field : patch.entrySet()) {
+            validate(field.getKey(), field.getValue());
+        }
+
+        boolean queryChanged = false;
+        if (patch.has("reset") && patch.get("reset").getAsBoolean()) {
+            userInfoEntity.setProperty("filter", "recent");
+            userInfoEntity.setProperty("searchBy", "name");
+            userInfoEntity.setProperty("searchInput", null);
+            userInfoEntity.setProperty("max", 10L);
+            userInfoEntity.setProperty("language", "en");
+            queryChanged = true;
+        }
+
+        for (String name : Arrays.asList("filter", "searchBy", "searchInput", "language", "where")) {
+            if (patch.has(name)) {
+                String value = patch.get(name).isJsonNull() ? null : patch.get(name).getAsString();
+                // The stored page cursors belong to the previous ordering or search.
+                queryChanged |= !name.equals("language") && !name.equals("where")
+                        && !Optional.ofNullable(value).equals(Optional.ofNullable(userInfoEntity.getProperty(name)));
+                userInfoEntity.setProperty(name, value);
+            }
+        }
+
+        if (patch.has("max")) {
+            long max = patch.get("max").getAsLong();
+            // The stored page cursors belong to the previous page size.
+            queryChanged |= !Long.valueOf(max).equals(userInfoEntity.getProperty("max"));
+            userInfoEntity.setProperty("max", max);
+        }
+
+        if (queryChanged) {
+            CommentQuery.resetCursors(userInfoEntity);
+        }
+
+        // Moving between pages happens after the query was changed, so that it moves through the new results.
+        String direction = patch.has("direction") ? patch.get("direction").getAsString() : null;
+        if ("next".equals(direction) && patch.has("cursor")) {
+            nextPage(userInfoEntity, patch.get("cursor").getAsString());
+        } else if ("prev".equals(direction)) {
+            prevPage(userInfoEntity);
+        } else if (patch.has("page")) {
+            jumpToPage(userInfoEntity, patch.get("page").getAsLong());
+        }
+    }
+
+    // Throws IllegalArgumentException if the field is unknown or its value is not allowed.
+    private static void validate(String name, JsonElement value) {
+        try {
+            switch (name) {
+                case "filter":
+                    checkArgument(FILTERS.contains(value.getAsString()), name);
+                    break;
+                case "searchBy":
+                    checkArgument(SEARCH_BY.contains(value.getAsString()), name);
+                    break;
+                case "searchInput":
+                case "where":
+                    checkArgument(value.isJsonNull() || value.getAsString() != null, name);
+                    break;
+                case "language":
+                    checkArgument(!value.getAsString().isEmpty(), name);
+                    break;
+                case "cursor":
+                    // An empty cursor is the start of the first page.
+                    value.getAsString();
+                    break;
+                case "direction":
+                    checkArgument(value.getAsString().equals("next") || value.getAsString().equals("prev"), name);
+                    break;
+                case "max":
+                    checkArgument(value.getAsLong() > 0 && value.getAsLong() <= MAX_PAGE_SIZE, name);
+                    break;
+                case "page":
+                    checkArgument(value.getAsLong() > 0, name);
+                    break;
+                case "reset":
+                    value.getAsBoolean();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown preference " + name);
+            }
+        } catch (ClassCastException | IllegalStateException | UnsupportedOperationException e) {
+            // Thrown by Gson when the value has the wrong type, which includes a null.
+            throw new IllegalArgumentException("Invalid value for " + name, e);
+        }
+    }
+
+    private static void checkArgument(boolean valid, String name) {
+        if (!valid) {
+            throw new IllegalArgumentException("Invalid value for " + name);
+        }
+    }
+
+    // Moves to the page that starts at the cursor, remembering where the current page starts to be able to come back.
+    private static void nextPage(Entity userInfoEntity, String cursor) {
+        List<String> prevCursors = CommentQuery.getPrevCursors(userInfoEntity);
+        prevCursors.add(Optional.ofNullable((String) userInfoEntity.getProperty("cursor")).orElse(""));
+        CommentQuery.setCursors(userInfoEntity, cursor, prevCursors);
+    }
+
+    // Moves back to the page before the current one.
+    private static void prevPage(Entity userInfoEntity) {
+        List<String> prevCursors = CommentQuery.getPrevCursors(userInfoEntity);
+        String prevCursor = null;
+        if (!prevCursors.isEmpty()) {
+            prevCursor = prevCursors.remove(prevCursors.size() - 1);
+        }
+        CommentQuery.setCursors(userInfoEntity, prevCursor, prevCursors);
+    }
+
+    // Stores the cursors that lead to the given page. Pages that were already visited reuse their stored cursor,
+    // otherwise the start of each page is found by skipping max comments at a time.
+    private static void jumpToPage(Entity userInfoEntity, long newPage) {
+        List<String> prevCursors = CommentQuery.getPrevCursors(userInfoEntity);
+        String current = Optional.ofNullable((String) userInfoEntity.getProperty("cursor")).orElse("");
+        prevCursors.add(current);
+
+        // Going back to a page that was already visited.
+        if (newPage <= prevCursors.size()) {
+            int index = (int) (newPage - 1);
+            List<String> visited = new ArrayList<String>(prevCursors.subList(0, index));
+            CommentQuery.setCursors(userInfoEntity, prevCursors.get(index), visited);
+            return;
+        }
+
+        long max = (long) Optional.ofNullable(userInfoEntity.getProperty("max")).orElse(10L);
+
+        // Search results are paged by page number, so there is nothing to walk. They never go past the ranked results.
+        if (CommentSearch.isSearch(userInfoEntity)) {
+            long lastPage = Math.max(prevCursors.size(), CommentSearch.getMaxPages(max));
+            while (prevCursors.size() < Math.min(newPage, lastPage)) {
+                prevCursors.add("search-" + (prevCursors.size() + 1));
+            }
+            String cursor = prevCursors.remove(prevCursors.size() - 1);
+            CommentQuery.setCursors(userInfoEntity, cursor, prevCursors);
+            return;
+        }
+
+        // Walk forward from the furthest page that is known until the requested page is reached.
+        while (prevCursors.size() < newPage) {
+            String next = Stores.comments().skip(userInfoEntity, prevCursors.get(prevCursors.size() - 1), (int) max);
+            if (next == null) {
+                // The requested page does not exist, so stay on the last one.
+                break;
+            }
+            prevCursors.add(next);
+        }
+
+        String cursor = prevCursors.remove(prevCursors.size() - 1);
+        CommentQuery.setCursors(userInfoEntity, cursor, prevCursors);
+    }
+}
@@ -0,0 +1,43 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.function.Consumer;
+import com.google.appengine.api.datastore.Entity;
+
+/** Stores the UserInfo entities, keyed by user id. Stores.users() returns the implementation in use */
+public interface UserStore {
+
+    // Returns the UserInfo entity of the user or null if the user is not registered.
+    Entity get(String id);
+
+    void put(Entity userInfoEntity);
+
+    // Applies the change to the UserInfo entity of the user and stores it as one atomic read-modify-write. Returns the
+    // stored entity, or null if the user is not registered. Nothing is stored if the change throws.
+    Entity update(String id, Consumer<Entity> change);
+
+    // Stores the UserInfo entity of a user who registers, or registers again, and claims its username in the same
+    // transaction. Returns false, storing nothing, if another user already holds the username in any case.
+    boolean register(Entity userInfoEntity);
+
+    // Returns whether a registered user already has the username in any case. The answer can be out of date, so only
+    // register decides who gets a username.
+    boolean isUsernameTaken(String username);
+
+    // Brings the lookup structures behind isUsernameTaken up to date with every stored user. Run by cron, so it can
+    // read every user without keeping a request waiting.
+    void refreshUsernames();
+}
@@ -0,0 +1,125 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Transaction;
+
+/** The thumbs up and thumbs down a user gave a comment, stored under a key made of both ids */
+public final class Vote {
+
+    private final String userId;
+    private final long commentId;
+    private boolean liked;
+    private boolean unliked;
+
+    public Vote(String userId, long commentId, boolean liked, boolean unliked) {
+        this.userId = userId;
+        this.commentId = commentId;
+        this.liked = liked;
+        this.unliked = unliked;
+    }
+
+    public Vote(Entity voteEntity) {
+        this.userId = (String) voteEntity.getProperty("user");
+        this.commentId = (long) voteEntity.getProperty("comment");
+        this.liked = (boolean) voteEntity.getProperty("liked");
+        this.unliked = (boolean) voteEntity.getProperty("unliked");
+    }
+
+    public long getCommentId() {
+        return commentId;
+    }
+
+    public boolean isLiked() {
+        return liked;
+    }
+
+    public boolean isUnliked() {
+        return unliked;
+    }
+
+    public void toggleLiked() {
+        this.liked = !this.liked;
+        return;
+    }
+
+    public void toggleUnliked() {
+        this.unliked = !this.unliked;
+        return;
+    }
+
+    // Stores the vote as part of the transaction, or deletes it once the user took back both thumbs.
+    public void updateDatabase(Transaction txn) {
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+
+        if (!liked && !unliked) {
+            datastore.delete(txn, getKey(userId, commentId));
+            return;
+        }
+
+        Entity voteEntity = new Entity(getKey(userId, commentId));
+        voteEntity.setProperty("user", userId);
+        voteEntity.setProperty("comment", commentId);
+        voteEntity.setUnindexedProperty("liked", liked);
+        voteEntity.setUnindexedProperty("unliked", unliked);
+        datastore.put(txn, voteEntity);
+        return;
+    }
+
+    // Returns the vote of the user on the comment, read inside the transaction, or null if the user never voted on it.
+    public static Vote get(Transaction txn, String userId, long commentId) {
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        try {
+            return new Vote(datastore.get(txn, getKey(userId, commentId)));
+        } catch (EntityNotFoundException e) {
+            return null;
+        }
+    }
+
+    // Returns the votes of the user on the given comments with a single batch get, keyed by comment id. Comments the
+    // user never voted on are left out.
+    public static Map<Long, Vote> getAll(String userId, List<Long> commentIds) {
+        return getAll(null, userId, commentIds);
+    }
+
+    // Returns the votes of the user on the given comments, read inside the transaction, keyed by comment id.
+    public static Map<Long, Vote> getAll(Transaction txn, String userId, List<Long> commentIds) {
+        List<Key> keys = new ArrayList<Key>();
+        for (long commentId : commentIds) {
+            keys.add(getKey(userId, commentId));
+        }
+
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        Map<Long, Vote> votes = new HashMap<Long, Vote>();
+        for (Entity voteEntity : datastore.get(txn, keys).values()) {
+            Vote vote = new Vote(voteEntity);
+            votes.put(vote.commentId, vote);
+        }
+        return votes;
+    }
+
+    public static Key getKey(String userId, long commentId) {
+        return KeyFactory.createKey("Vote", userId + ":" + commentId);
+    }
+}
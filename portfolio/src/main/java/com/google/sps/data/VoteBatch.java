@@ -0,0 +1,59 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Thumbs up and thumbs down toggles a user made on a number of comments. Toggling the same thumb twice cancels out,
+ * so only the comments whose votes actually change are kept.
+ */
+public final class VoteBatch {
+
+    // Bit set when the thumbs up of the comment is toggled, and when its thumbs down is.
+    private static final int UP = 1;
+    private static final int DOWN = 2;
+
+    private final Map<Long, Integer> toggles = new LinkedHashMap<Long, Integer>();
+
+    // Toggles the thumbs up of the comment, or its thumbs down.
+    public void toggle(long commentId, boolean thumbsUp) {
+        int toggled = toggles.getOrDefault(commentId, 0) ^ (thumbsUp ? UP : DOWN);
+        if (toggled == 0) {
+            toggles.remove(commentId);
+        } else {
+            toggles.put(commentId, toggled);
+        }
+    }
+
+    public List<Long> getCommentIds() {
+        return new ArrayList<Long>(toggles.keySet());
+    }
+
+    public boolean isLikeToggled(long commentId) {
+        return (toggles.getOrDefault(commentId, 0) & UP) != 0;
+    }
+
+    public boolean isUnlikeToggled(long commentId) {
+        return (toggles.getOrDefault(commentId, 0) & DOWN) != 0;
+    }
+
+    public boolean isEmpty() {
+        return toggles.isEmpty();
+    }
+}
@@ -0,0 +1,43 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+/** Thumbs up and thumbs down counts of a comment */
+public final class VoteCount {
+
+    private final long thumbsup;
+    private final long thumbsdown;
+
+    public VoteCount(long thumbsup, long thumbsdown) {
+        this.thumbsup = thumbsup;
+        this.thumbsdown = thumbsdown;
+    }
+
+    public long getThumbsup() {
+        return thumbsup;
+    }
+
+    public long getThumbsdown() {
+        return thumbsdown;
+    }
+
+    public long getPopularity() {
+        return thumbsup - thumbsdown;
+    }
+
+    public VoteCount plus(VoteCount other) {
+        return new VoteCount(thumbsup + other.thumbsup, thumbsdown + other.thumbsdown);
+    }
+}
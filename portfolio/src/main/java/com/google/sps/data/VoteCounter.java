@@ -0,0 +1,268 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+
+/**
+ * Sharded vote counters of the comments. The thumbsup, thumbsdown and popularity properties of a Comment entity hold
+ * the folded counts, and votes since the last fold are spread over VoteShard entities so that voters of a popular
+ * comment do not all contend on the Comment entity. The shards are folded back into the comment every now and then,
+ * which keeps the popularity sort close to the real counts.
+ */
+public final class VoteCounter {
+
+    // Number of shards the votes of a single comment are spread over.
+    private static final int NUM_SHARDS = 5;
+    // How long the aggregated shards of a comment are trusted before they are read again.
+    private static final long CACHE_TTL_MILLIS = 5000;
+    // Shortest time between two folds of the same comment by this instance.
+    private static final long FOLD_INTERVAL_MILLIS = 30000;
+
+    private static final Random random = new Random();
+    private static final Map<Long, CachedShards> cache = new ConcurrentHashMap<Long, CachedShards>();
+    private static final Map<Long, Long> lastFolds = new ConcurrentHashMap<Long, Long>();
+
+    private VoteCounter() {}
+
+    private static final class CachedShards {
+        private final VoteCount shards;
+        private final long folds;
+        private final long version;
+        private final long expiresAt;
+
+        private CachedShards(VoteCount shards, long folds, long version, long expiresAt) {
+            this.shards = shards;
+            this.folds = folds;
+            this.version = version;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    // Adds the vote deltas to a random shard of the comment as part of the given transaction. Call committed once the
+    // transaction went through.
+    public static void add(Transaction txn, long commentId, long thumbsupDelta, long thumbsdownDelta) {
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        Key shardKey = getShardKey(commentId, random.nextInt(NUM_SHARDS));
+
+        Entity shard;
+        try {
+            shard = datastore.get(txn, shardKey);
+        } catch (EntityNotFoundException e) {
+            shard = new Entity(shardKey);
+            shard.setProperty("comment", commentId);
+            shard.setUnindexedProperty("thumbsup", (long) 0);
+            shard.setUnindexedProperty("thumbsdown", (long) 0);
+        }
+
+        shard.setUnindexedProperty("thumbsup", (long) shard.getProperty("thumbsup") + thumbsupDelta);
+        shard.setUnindexedProperty("thumbsdown", (long) shard.getProperty("thumbsdown") + thumbsdownDelta);
+        datastore.put(txn, shard);
+    }
+
+    // Drops the cached shards of the comment after a vote was committed and folds them into the comment if it has not
+    // been done for a while.
+    public static void committed(long commentId) {
+        cache.remove(commentId);
+
+        long now = System.currentTimeMillis();
+        Long lastFold = lastFolds.get(commentId);
+        if (lastFold == null || now - lastFold > FOLD_INTERVAL_MILLIS) {
+            lastFolds.put(commentId, now);
+            fold(commentId);
+        }
+    }
+
+    // Returns the total vote counts of the given comment entities, keyed by comment id. Shards that are not cached are
+    // read with a single batch get. Cached shards are only used if they were read at the given CommentVersion, so that
+    // counts served under an ETag are never older than its version, or -1 to accept shards read at any version.
+    public static Map<Long, VoteCount> getCounts(List<Entity> commentEntities, long version) {
+        Map<Long, VoteCount> counts = new HashMap<Long, VoteCount>();
+        List<Key> missingKeys = new ArrayList<Key>();
+        long now = System.currentTimeMillis();
+
+        for (Entity commentEntity : commentEntities) {
+            long id = commentEntity.getKey().getId();
+            CachedShards cached = cache.get(id);
+            if (cached != null && cached.expiresAt > now && cached.folds == getFolds(commentEntity)
+                    && (version < 0 || cached.version == version)) {
+                counts.put(id, getFolded(commentEntity).plus(cached.shards));
+            } else {
+                for (int i = 0; i < NUM_SHARDS; i++) {
+                    missingKeys.add(getShardKey(id, i));
+                }
+            }
+        }
+
+        if (missingKeys.isEmpty()) {
+            return counts;
+        }
+
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        Map<Key, Entity> shards = datastore.get(missingKeys);
+
+        for (Entity commentEntity : commentEntities) {
+            long id = commentEntity.getKey().getId();
+            if (counts.containsKey(id)) {
+                continue;
+            }
+
+            VoteCount sum = new VoteCount(0, 0);
+            for (int i = 0; i < NUM_SHARDS; i++) {
+                Entity shard = shards.get(getShardKey(id, i));
+                if (shard != null) {
+                    sum = sum.plus(getCount(shard));
+                }
+            }
+
+            cache.put(id, new CachedShards(sum, getFolds(commentEntity), version, now + CACHE_TTL_MILLIS));
+            counts.put(id, getFolded(commentEntity).plus(sum));
+        }
+
+        return counts;
+    }
+
+    // Moves the counts of every shard of the comment into the Comment entity in one transaction. Gives up quietly if
+    // the comment is gone or a vote got in the way, since the next fold picks the shards up again.
+    private static void fold(long commentId) {
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        List<Key> shardKeys = new ArrayList<Key>();
+        for (int i = 0; i < NUM_SHARDS; i++) {
+            shardKeys.add(getShardKey(commentId, i));
+        }
+
+        TransactionOptions options = TransactionOptions.Builder.withXG(true);
+        Transaction txn = datastore.beginTransaction(options);
+        try {
+            Entity commentEntity = datastore.get(txn, KeyFactory.createKey("Comment", commentId));
+            Map<Key, Entity> shards = datastore.get(txn, shardKeys);
+            if (shards.isEmpty()) {
+                return;
+            }
+
+            VoteCount total = getFolded(commentEntity);
+            for (Entity shard : shards.values()) {
+                total = total.plus(getCount(shard));
+            }
+
+            commentEntity.setProperty("thumbsup", total.getThumbsup());
+            commentEntity.setProperty("thumbsdown", total.getThumbsdown());
+            commentEntity.setProperty("popularity", total.getPopularity());
+            commentEntity.setProperty("hot", HotScore.compute(total.getThumbsup(), total.getThumbsdown(),
+                    (long) commentEntity.getProperty("time")));
+            commentEntity.setUnindexedProperty("folds", getFolds(commentEntity) + 1);
+            datastore.put(txn, commentEntity);
+            datastore.delete(txn, shards.keySet());
+
+            txn.commit();
+            cache.remove(commentId);
+            // The popularity and hot orders may change.
+            CommentVersion.bump();
+
+            // Cached first pages hold the counts from before the fold, and the popularity and hot orders may have changed.
+            FirstPageCache.invalidateComment(commentId);
+            FirstPageCache.invalidatePopularity();
+        } catch (EntityNotFoundException | ConcurrentModificationException e) {
+            return;
+        } finally {
+            if (txn.isActive()) {
+                txn.rollback();
+            }
+        }
+    }
+
+    // Deletes the shards of comments that were deleted, with their unfolded votes, and forgets what this instance
+    // cached about them.
+    public static void deleteShards(List<Long> commentIds) {
+        List<Key> shardKeys = new ArrayList<Key>();
+        for (long commentId : commentIds) {
+            for (int i = 0; i < NUM_SHARDS; i++) {
+                shardKeys.add(getShardKey(commentId, i));
+            }
+            cache.remove(commentId);
+            lastFolds.remove(commentId);
+        }
+
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        datastore.delete(shardKeys);
+    }
+
+    // Folds the shards of up to limit comments that have votes which were not folded yet, so that their popularity and
+    // hot score catch up even if nobody votes on them again. Returns the number of comments that were folded.
+    public static int foldPending(int limit) {
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        Query query = new Query("VoteShard").setKeysOnly();
+
+        // Every shard that still exists holds votes that were not folded, and its name starts with the comment id.
+        Set<Long> commentIds = new LinkedHashSet<Long>();
+        for (Entity shard : datastore.prepare(query).asIterable(FetchOptions.Builder.withLimit(limit * NUM_SHARDS))) {
+            String name = shard.getKey().getName();
+            commentIds.add(Long.parseLong(name.substring(0, name.lastIndexOf('-'))));
+            if (commentIds.size() >= limit) {
+                break;
+            }
+        }
+
+        for (long commentId : commentIds) {
+            lastFolds.put(commentId, System.currentTimeMillis());
+            fold(commentId);
+        }
+        return commentIds.size();
+    }
+
+    // Forgets what this instance cached and folded, for tests that start over with an empty Datastore.
+    static void clearCache() {
+        cache.clear();
+        lastFolds.clear();
+    }
+
+    private static VoteCount getFolded(Entity commentEntity) {
+        return new VoteCount((long) commentEntity.getProperty("thumbsup"), (long) commentEntity.getProperty("thumbsdown"));
+    }
+
+    private static VoteCount getCount(Entity shard) {
+        return new VoteCount((long) shard.getProperty("thumbsup"), (long) shard.getProperty("thumbsdown"));
+    }
+
+    // Returns how many times the shards were folded into the comment, which tells cached shard sums apart.
+    private static long getFolds(Entity commentEntity) {
+        Object folds = commentEntity.getProperty("folds");
+        if (folds == null) {
+            return 0;
+        }
+        return (long) folds;
+    }
+
+    private static Key getShardKey(long commentId, int shard) {
+        return KeyFactory.createKey("VoteShard", commentId + "-" + shard);
+    }
+}
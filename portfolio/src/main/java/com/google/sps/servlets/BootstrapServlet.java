@@ -0,0 +1,85 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.io.IOException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import com.google.gson.JsonObject;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.google.sps.data.BootstrapCache;
+import com.google.sps.data.UserInfoRepository;
+import com.google.sps.data.UserPreferences;
+
+@WebServlet("/bootstrap")
+public final class BootstrapServlet extends HttpServlet {
+
+    // Responds with everything a page needs before it renders: whether the user is logged in, the login or logout
+    // URL, the username and name, where the user was, and the user's preferences. The UserInfo entity is read once by
+    // key, and the response of a registered user is served from memory for a short while.
+    @Override
+    public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType("application/json;");
+
+        UserService userService = UserServiceFactory.getUserService();
+        if (!userService.isUserLoggedIn()) {
+            JsonObject json = new JsonObject();
+            json.addProperty("loggedIn", false);
+            json.addProperty("loginUrl", userService.createLoginURL("/contact.html"));
+            json.add("preferences", UserPreferences.toJson(UserInfoRepository.createDefault()));
+            response.getWriter().println(json);
+            return;
+        }
+
+        String userId = userService.getCurrentUser().getUserId();
+        String cached = BootstrapCache.get(userId);
+        if (cached != null) {
+            response.getWriter().println(cached);
+            return;
+        }
+
+        Entity userInfoEntity = UserInfoRepository.get(request);
+        String where = userInfoEntity == null ? null : (String) userInfoEntity.getProperty("where");
+        if (where == null) {
+            where = "/contact.html";
+        }
+
+        JsonObject json = new JsonObject();
+        json.addProperty("loggedIn", true);
+        json.addProperty("logoutUrl", userService.createLogoutURL(where));
+        json.addProperty("where", where);
+        if (userInfoEntity == null) {
+            json.addProperty("username", (String) null);
+            json.addProperty("name", (String) null);
+            json.add("preferences", UserPreferences.toJson(UserInfoRepository.createDefault()));
+        } else {
+            json.addProperty("username", (String) userInfoEntity.getProperty("username"));
+            json.addProperty("name", (String) userInfoEntity.getProperty("name"));
+            json.add("preferences", UserPreferences.toJson(userInfoEntity));
+        }
+
+        // Users who did not pick a username yet are not cached, since they are about to register, maybe through
+        // another instance.
+        String body = json.toString();
+        if (userInfoEntity != null) {
+            BootstrapCache.put(userId, body);
+        }
+        response.getWriter().println(body);
+    }
+}
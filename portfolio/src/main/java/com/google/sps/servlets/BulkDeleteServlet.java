@@ -0,0 +1,78 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.io.IOException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
+import java.util.List;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.google.sps.data.CommentCleanup;
+import com.google.sps.data.CommentEvents;
+import com.google.sps.data.Stores;
+
+@WebServlet("/bulk-delete")
+public final class BulkDeleteServlet extends HttpServlet {
+
+    // Upper bound on the comments deleted by one request, which keeps the cleanup task small.
+    private static final int MAX_IDS = 500;
+
+    private static final Gson gson = new Gson();
+
+    // Deletes a JSON array of comment ids for moderation and answers with the ids that existed and were deleted. Their
+    // votes are swept up afterwards by a task.
+    @Override
+    public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        UserService userService = UserServiceFactory.getUserService();
+        if (!userService.isUserLoggedIn() || !userService.isUserAdmin()) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+
+        List<Long> ids = new ArrayList<Long>();
+        try {
+            JsonArray array = JsonParser.parseReader(request.getReader()).getAsJsonArray();
+            if (array.size() > MAX_IDS) {
+                throw new IllegalArgumentException("At most " + MAX_IDS + " comments can be deleted at once");
+            }
+            for (JsonElement element : array) {
+                ids.add(element.getAsLong());
+            }
+        } catch (JsonParseException | IllegalStateException | IllegalArgumentException
+                | UnsupportedOperationException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+
+        List<Long> deleted = Stores.comments().deleteAll(ids);
+        CommentCleanup.enqueue(deleted);
+        CommentEvents.publishDelete(deleted);
+
+        JsonObject json = new JsonObject();
+        json.add("deleted", gson.toJsonTree(deleted));
+        response.setContentType("application/json;");
+        response.getWriter().println(json);
+    }
+}
@@ -0,0 +1,44 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.io.IOException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.List;
+import com.google.sps.data.CommentCleanup;
+import com.google.sps.data.Stores;
+
+@WebServlet(CommentCleanup.TASK_URL)
+public final class CleanupTaskServlet extends HttpServlet {
+
+    // Removes a batch of the votes, vote references and translations of the deleted comments, and queues the next
+    // batch if there may be more. Any exception fails the task, which makes the task queue retry it.
+    @Override
+    public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        // App Engine removes this header from outside requests, so only the task queue can reach this servlet.
+        if (request.getHeader("X-AppEngine-QueueName") == null) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+
+        List<Long> ids = CommentCleanup.parse(request.getParameter("ids"));
+        if (Stores.comments().sweepDeleted(ids, CommentCleanup.SWEEP_LIMIT) >= CommentCleanup.SWEEP_LIMIT) {
+            CommentCleanup.enqueue(ids);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.io.IOException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import com.google.sps.data.Stores;
+
+@WebServlet("/tasks/count-comments")
+public final class CountTaskServlet extends HttpServlet {
+
+    // Upper bound on the number of comments counted by a single run, which keeps each run well within its deadline.
+    private static final int MAX_COMMENTS = 500;
+
+    // Run by cron. Adds the comments that were posted before the total was kept as a counter to it, a batch per run,
+    // until every comment is counted. Later runs return right away.
+    @Override
+    public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        // App Engine removes this header from outside requests, so only cron can reach this servlet.
+        if (request.getHeader("X-Appengine-Cron") == null) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+
+        int counted = Stores.comments().countLegacyComments(MAX_COMMENTS);
+
+        response.setContentType("application/json;");
+        response.getWriter().println("{\"counted\": " + counted + "}");
+    }
+}
@@ -15,98 +15,131 @@
 package com.google.sps.servlets;
 
 import java.io.IOException;
+import java.io.Writer;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Iterator;
+import java.util.Map;
 import java.util.Optional;
 import com.google.gson.Gson;
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.gson.stream.JsonWriter;
 import com.google.appengine.api.datastore.Entity;
 import com.google.sps.data.Comment;
-import com.google.appengine.api.datastore.PreparedQuery;
-import com.google.appengine.api.datastore.Query;
-import com.google.appengine.api.datastore.Query.SortDirection;
-import com.google.appengine.api.datastore.Query.FilterOperator;
-import com.google.appengine.api.datastore.Query.Filter;
-import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.sps.data.CommentEvents;
+import com.google.sps.data.CommentPage;
+import com.google.sps.data.CommentQuery;
+import com.google.sps.data.CommentSearch;
+import com.google.sps.data.CommentSentiment;
+import com.google.sps.data.CommentStore;
+import com.google.sps.data.CommentTranslator;
+import com.google.sps.data.CommentVersion;
+import com.google.sps.data.FirstPageCache;
+import com.google.sps.data.HotScore;
+import com.google.sps.data.RateLimiter;
+import com.google.sps.data.Stores;
+import com.google.sps.data.UserInfo;
+import com.google.sps.data.UserInfoRepository;
+import com.google.sps.data.Vote;
+import com.google.sps.data.VoteCount;
 import com.google.appengine.api.datastore.Key;
-import com.google.appengine.api.datastore.KeyFactory;
 import com.google.appengine.api.users.UserService;
 import com.google.appengine.api.users.UserServiceFactory;
-import com.google.cloud.translate.Translate;
-import com.google.cloud.translate.TranslateOptions;
-import com.google.cloud.translate.Translation;
-import com.google.appengine.api.datastore.FetchOptions;
 
 
 @WebServlet("/data")
 public final class DataServlet extends HttpServlet {
 
+    // Longest time a page waits for its translations before the comments are returned in their original language.
+    private static final long TRANSLATION_DEADLINE_MILLIS = 800;
+
+    // Gson is thread safe, so every request shares the same instance.
+    private static final Gson gson = new Gson();
+
     @Override
     public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
         // Get the information of the currently logged in user.
-        Entity userInfoEntity = getUserInfoEntity();
-        
-        String selectedFilter = (String) userInfoEntity.getProperty("filter");
-
-        Query queryComments = null;
-        // Assign the correct query to queryComments according to the filter settings in place. 
-        switch (selectedFilter) {
-            case "recent":
-                queryComments = new Query("Comment").addSort("time", SortDirection.DESCENDING);
-                break;
-            case "oldest":
-                queryComments = new Query("Comment").addSort("time", SortDirection.ASCENDING);
-                break;
-            case "top":
-                queryComments = new Query("Comment").addSort("popularity", SortDirection.DESCENDING);
-                break;
-            case "bottom":
-                queryComments = new Query("Comment").addSort("popularity", SortDirection.ASCENDING);
-                break;
-            default:
-                queryComments = new Query("Comment").addSort("name", SortDirection.ASCENDING);
-                break;
-        }
- 
-        // Add the appropriate searchBy filter.
-        String searchBy = (String) userInfoEntity.getProperty("searchBy");
-        String searchInput = (String) userInfoEntity.getProperty("searchInput");
-        if (searchInput != null) {
-            Filter searchFilter = null;
-            if (searchBy.equals("username")) {
-                searchFilter = new FilterPredicate("username", FilterOperator.EQUAL, searchInput);
-            } else {
-                searchFilter = new FilterPredicate("name", FilterOperator.EQUAL, searchInput);
-            }
-            queryComments = queryComments.setFilter(searchFilter);
+        Entity userInfoEntity = UserInfoRepository.getOrDefault(request);
+
+        // Answer with 304 Not Modified, without running the comments query, if the client already has this page.
+        long version = Stores.comments().getVersion();
+        String eTag = getETag(userInfoEntity, version);
+        response.setHeader("Cache-Control", "no-cache");
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null && ifNoneMatch.contains(eTag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
         }
         
-        DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-        PreparedQuery resultsComments = datastore.prepare(queryComments);
-        List<Comment> comments = iterateQuery(resultsComments);
-        String json = convertToJsonUsingGson(comments);
+        CommentPage commentPage = fetchPage(userInfoEntity, version);
+
+        // A page with comments that missed the translation deadline must not be reused by the client.
+        if (isFullyTranslated(commentPage)) {
+            response.setHeader("ETag", eTag);
+        }
+
         response.setContentType("application/json;");
         response.setCharacterEncoding("UTF-8");
-        response.getWriter().println(json);
+        writeJsonUsingGson(commentPage, response.getWriter());
     }
 
-    // Converts the comments array  into a JSON string using the Gson library.
-    private String convertToJsonUsingGson(List<Comment> comments) {
-        Gson gson = new Gson();
-        String json = gson.toJson(comments);
-        return json;
+    // Returns the ETag of the page the user is in, which changes with the comments, the viewer and their settings.
+    private String getETag(Entity userInfoEntity, long version) {
+        return CommentVersion.getETag(version, UserInfoRepository.getCurrentUserId(),
+                userInfoEntity.getProperty("filter"), userInfoEntity.getProperty("searchBy"),
+                userInfoEntity.getProperty("searchInput"), userInfoEntity.getProperty("max"),
+                userInfoEntity.getProperty("language"), userInfoEntity.getProperty("cursor"),
+                userInfoEntity.getProperty("prevCursors"));
+    }
+
+    private boolean isFullyTranslated(CommentPage commentPage) {
+        for (Comment comment : commentPage.getComments()) {
+            if (!comment.isTranslated()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Streams the comments page as JSON straight into the response, one comment at a time, using the Gson library.
+    private void writeJsonUsingGson(CommentPage commentPage, Writer out) throws IOException {
+        JsonWriter writer = new JsonWriter(out);
+        writer.beginObject();
+
+        writer.name("comments");
+        writer.beginArray();
+        for (Comment comment : commentPage.getComments()) {
+            gson.toJson(comment, Comment.class, writer);
+        }
+        writer.endArray();
+
+        writer.name("page").value(commentPage.getPage());
+        writer.name("prev").value(commentPage.getPrev());
+        writer.name("next").value(commentPage.getNext());
+
+        writer.endObject();
+        writer.flush();
     }
 
     @Override
     public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        UserService userService = UserServiceFactory.getUserService();
+        if (!userService.isUserLoggedIn()) {
+            response.sendRedirect("/contact.html");
+            return;
+        }
+        if (!RateLimiter.POSTS.check(userService.getCurrentUser().getUserId(), response)) {
+            return;
+        }
+
         // Get the information of the currently logged in user.
-        Entity userInfoEntity = getUserInfoEntity();
+        Entity userInfoEntity = UserInfoRepository.get(request);
+        if (userInfoEntity == null) {
+            response.sendRedirect("/contact.html");
+            return;
+        }
         String name = (String) userInfoEntity.getProperty("name");
         String username = (String) userInfoEntity.getProperty("username");
 
@@ -120,7 +153,6 @@ public final class DataServlet extends HttpServlet {
         String comment = Optional.ofNullable(request.getParameter("user-comment")).orElse("error");
 
         // Get current user's email.
-        UserService userService = UserServiceFactory.getUserService();
         String email = userService.getCurrentUser().getEmail();
 
         // Add comment to the datastore.
@@ -130,11 +162,8 @@ public final class DataServlet extends HttpServlet {
         return;
     }
 
-    // Iterates over a comments query and returns an array of comments.
-    private List<Comment> iterateQuery(PreparedQuery results) {
-        Entity userInfoEntity = getUserInfoEntity();
-
-        long totalComments = getTotal();
+    // Fetches the page the user is currently in, starting at the stored cursor, and returns it with its neighbouring cursors.
+    private CommentPage fetchPage(Entity userInfoEntity, long version) {
         long page = (long) userInfoEntity.getProperty("page");
         long maxComments = (long) userInfoEntity.getProperty("max");
 
@@ -143,88 +172,134 @@ public final class DataServlet extends HttpServlet {
             language = "en";
         }
 
-        List<Comment> comments = new ArrayList<>();
-        Iterator<Entity> iter = results.asIterator();
+        String cursor = (String) userInfoEntity.getProperty("cursor");
 
-        // Iterates over the results until the results are less than the limit on comments or until the end of all results.
-        for (int count = 0; count < (maxComments * page) && count < totalComments; count++) {
-            if (iter.hasNext()) {
-                Entity entity = iter.next();
+        // The first page of every order is served from memory when possible.
+        boolean search = CommentSearch.isSearch(userInfoEntity);
+        String cacheKey = null;
+        FirstPageCache.Page cachedPage = null;
+        long contentVersion = -1;
+        if ((cursor == null || cursor.isEmpty()) && !search) {
+            cacheKey = FirstPageCache.getKey(userInfoEntity, language);
+            contentVersion = Stores.comments().getContentVersion(version);
+            cachedPage = FirstPageCache.get(cacheKey, contentVersion);
+        }
+
+        List<Entity> entities;
+        String next = null;
+        if (cachedPage != null) {
+            entities = cachedPage.getEntities();
+            next = cachedPage.getNext();
+        } else if (search) {
+            CommentStore.Page storedPage = Stores.comments().search(userInfoEntity, page, (int) maxComments);
+            entities = storedPage.getEntities();
+            next = storedPage.getNext();
+        } else {
+            // Only read the comments of the current page instead of every comment before it.
+            CommentStore.Page storedPage;
+            try {
+                storedPage = Stores.comments().fetch(userInfoEntity, cursor, (int) maxComments);
+            } catch (IllegalArgumentException e) {
+                // The stored cursor does not belong to this query anymore, so start over from the first page.
+                page = 1;
+                storedPage = Stores.comments().fetch(userInfoEntity, null, (int) maxComments);
+            }
+            entities = storedPage.getEntities();
+            next = storedPage.getNext();
+        }
 
-                // Only add comment when it is part of the page the user is currently in.
-                if (count >= (maxComments * (page - 1))) {
-                    Comment comment = new Comment(entity);
+        Map<Long, VoteCount> votes = Stores.comments().getVotes(entities, version);
+
+        List<Comment> comments = new ArrayList<>();
+        for (Entity entity : entities) {
+            Comment comment = new Comment(entity);
+            comment.setVotes(votes.get(entity.getKey().getId()));
+            comments.add(comment);
+        }
 
-                    comment.translateComment(language);
+        markViewerVotes(entities, comments, userInfoEntity);
 
-                    comments.add(comment);
+        if (cachedPage != null) {
+            // Reuse the translations of the cached page and only translate the comments that missed the deadline.
+            List<Comment> untranslated = new ArrayList<>();
+            for (Comment comment : comments) {
+                String translated = cachedPage.getTranslations().get(comment.getId());
+                if (translated != null) {
+                    comment.setTranslatedContent(translated);
+                } else {
+                    untranslated.add(comment);
                 }
             }
+            CommentTranslator.translatePage(untranslated, language, TRANSLATION_DEADLINE_MILLIS);
+        } else {
+            // Translate the whole page at once instead of one comment at a time, without waiting past the deadline.
+            CommentTranslator.translatePage(comments, language, TRANSLATION_DEADLINE_MILLIS);
+
+            if (cacheKey != null) {
+                FirstPageCache.put(cacheKey, entities, next, comments, contentVersion);
+            }
+        }
+
+        // The previous page starts at the last cursor that was stored before the current one.
+        String prev = null;
+        List<String> prevCursors = CommentQuery.getPrevCursors(userInfoEntity);
+        if (page > 1 && !prevCursors.isEmpty()) {
+            prev = prevCursors.get(prevCursors.size() - 1);
         }
 
-        return comments;
+        return new CommentPage(comments, page, prev, next);
     }
 
-    // Creates a Comment entity and stores it in the datastore.
+    // Marks the comments the viewer voted on, reading all of the viewer's votes on the page in a single batch get.
+    private void markViewerVotes(List<Entity> entities, List<Comment> comments, Entity userInfoEntity) {
+        String userId = UserInfoRepository.getCurrentUserId();
+        if (userId == null || comments.isEmpty() || !userInfoEntity.hasProperty("id")) {
+            return;
+        }
+
+        List<Long> ids = new ArrayList<>();
+        for (Comment comment : comments) {
+            ids.add(comment.getId());
+        }
+        Map<Long, Vote> votes = Stores.comments().getViewerVotes(userId, ids);
+
+        // Votes cast before Vote entities existed are still in the viewer's liked and unliked lists.
+        UserInfo userInfo = new UserInfo(userInfoEntity);
+        for (int i = 0; i < comments.size(); i++) {
+            Comment comment = comments.get(i);
+            Vote vote = votes.get(comment.getId());
+            if (vote != null) {
+                comment.setViewerVote(vote.isLiked(), vote.isUnliked());
+            } else {
+                Key commentKey = entities.get(i).getKey();
+                comment.setViewerVote(userInfo.isLikedComment(commentKey), userInfo.isUnlikedComment(commentKey));
+            }
+        }
+    }
+
+    // Creates a Comment entity and stores it.
     private void createComment(String comment, String name, String email, String username) {
-        DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
         Entity commentEntity = new Entity("Comment");
         commentEntity.setProperty("content", comment);
         long timestamp = System.currentTimeMillis();
         commentEntity.setProperty("time", timestamp);
-        commentEntity.setProperty("thumbsup", 0);
-        commentEntity.setProperty("thumbsdown", 0);
-        commentEntity.setProperty("popularity", 0);
+        commentEntity.setProperty("thumbsup", 0L);
+        commentEntity.setProperty("thumbsdown", 0L);
+        commentEntity.setProperty("popularity", 0L);
+        commentEntity.setProperty("hot", HotScore.compute(0, 0, timestamp));
         commentEntity.setProperty("name", name);
         commentEntity.setProperty("email", email);
         commentEntity.setProperty("username", username);
-        datastore.put(commentEntity);
-    }
+        CommentSearch.index(commentEntity);
 
-    // Returns the username that corresponds to the id that was given or null if there is no username linked to that id.
-    private String getUsername(String id) {
-        DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-        Filter queryFilter = new FilterPredicate("id", Query.FilterOperator.EQUAL, id);
-        Query query = new Query("UserInfo").setFilter(queryFilter);
-        PreparedQuery results = datastore.prepare(query); 
-        Entity entity = results.asSingleEntity(); 
+        long id = Stores.comments().add(commentEntity);
 
-        if (entity == null) {
-            return null;
-        }
-
-        String username = (String) entity.getProperty("username");
-        return username;     
-    }
-
-    // Accesses the datastore to get the UserInfo entity. Returns the entity or null if one does not exist.
-    private Entity getUserInfoEntity() {
-        try {
-            UserService userService = UserServiceFactory.getUserService();
-            String id = userService.getCurrentUser().getUserId();
-            DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-            Filter queryFilter = new FilterPredicate("id", Query.FilterOperator.EQUAL, id);
-            Query query = new Query("UserInfo").setFilter(queryFilter);
-            PreparedQuery results = datastore.prepare(query); 
-            Entity userInfoEntity = results.asSingleEntity(); 
-
-            return userInfoEntity;
-
-        } catch (NullPointerException e) {
-            // If the user is not logged in, return default user entity
-            Entity defaultEntity = new Entity("UserInfo");
-            defaultEntity.setProperty("max", (long) 10);
-            defaultEntity.setProperty("page", (long) 1);
-            defaultEntity.setProperty("language", "en");
-            defaultEntity.setProperty("filter", "recent");
-            defaultEntity.setProperty("searchBy", "name");
-            return defaultEntity;
-        }
-    }
+        // Show the comment to the clients that are listening for events.
+        Entity createdEntity = new Entity("Comment", id);
+        createdEntity.setPropertiesFrom(commentEntity);
+        CommentEvents.publishCreate(new Comment(createdEntity));
 
-    private long getTotal() {
-        DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-        Query query = new Query("Comment");
-        return datastore.prepare(query).countEntities(FetchOptions.Builder.withDefaults());
+        // Score the sentiment of the comment once, in the background, so readers can sort by it for free.
+        CommentSentiment.enqueue(id);
     }
 }
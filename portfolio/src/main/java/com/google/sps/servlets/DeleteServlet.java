@@ -19,30 +19,35 @@ import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Collections;
 import java.util.Optional;
-import com.google.gson.Gson;
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
-import com.google.appengine.api.datastore.Entity;
-import com.google.sps.data.Comment;
-import com.google.appengine.api.datastore.PreparedQuery;
-import com.google.appengine.api.datastore.Query;
-import com.google.appengine.api.datastore.Query.SortDirection;
-import com.google.appengine.api.datastore.Key;
-import com.google.appengine.api.datastore.KeyFactory;
-import java.util.Iterator;
+import com.google.sps.data.CommentCleanup;
+import com.google.sps.data.CommentEvents;
+import com.google.sps.data.RateLimiter;
+import com.google.sps.data.Stores;
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
 
 @WebServlet("/delete-data")
 public final class DeleteServlet extends HttpServlet {
 
     @Override
     public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        // Anyone can delete a comment, so signed out clients are limited by their address instead.
+        UserService userService = UserServiceFactory.getUserService();
+        String key = userService.isUserLoggedIn() ? userService.getCurrentUser().getUserId() : request.getRemoteAddr();
+        if (!RateLimiter.DELETES.check(key, response)) {
+            return;
+        }
+
         long id = Long.parseLong(Optional.ofNullable(request.getParameter("anonymous")).orElse("off"));
-        Key commentEntityKey = KeyFactory.createKey("Comment", id);
-        DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-        datastore.delete(commentEntityKey);
+
+        // Delete the comment and uncount it, then sweep up its votes in the background. There is nothing to do if it
+        // was already deleted.
+        if (Stores.comments().delete(id)) {
+            CommentCleanup.enqueue(Collections.singletonList(id));
+            CommentEvents.publishDelete(Collections.singletonList(id));
+        }
 
         response.sendRedirect("/contact.html");
         return;
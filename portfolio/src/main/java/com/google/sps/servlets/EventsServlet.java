@@ -0,0 +1,66 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import com.google.sps.data.CommentEvents;
+
+@WebServlet("/events")
+public final class EventsServlet extends HttpServlet {
+
+    // How long the client waits before it asks for the next events. Instances serve one request at a time, so a
+    // request is answered right away instead of being held open until an event comes.
+    private static final long RETRY_MILLIS = 3000;
+
+    // Sends the comment events published after the one in the Last-Event-ID header as server-sent events. The client
+    // reconnects after the retry delay, which makes the event stream a cheap poll.
+    @Override
+    public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType("text/event-stream");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+
+        // A client without an id starts with the events published after it connected.
+        long last = CommentEvents.getLast();
+        long sequence = CommentEvents.parseId(request.getHeader("Last-Event-ID"));
+        if (sequence < 0) {
+            sequence = last;
+        }
+
+        PrintWriter out = response.getWriter();
+        out.print("retry: " + RETRY_MILLIS + "\n\n");
+
+        // A client that cannot catch up gets a reset event instead, which tells it to reload, and resumes from now.
+        List<CommentEvents.Event> events = CommentEvents.since(sequence, last);
+        if (events == null) {
+            out.print("id: " + last + "\nevent: reset\ndata: {}\n\n");
+        } else if (events.isEmpty()) {
+            // The id sets where the client resumes even if there are no events.
+            out.print("id: " + sequence + "\n\n");
+        } else {
+            for (CommentEvents.Event event : events) {
+                out.print("id: " + event.getId() + "\nevent: " + event.getType() + "\n");
+                out.print("data: " + event.getData() + "\n\n");
+            }
+        }
+        out.flush();
+    }
+}
@@ -19,23 +19,9 @@ import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Iterator;
 import java.util.Optional;
-import com.google.gson.Gson;
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
-import com.google.appengine.api.datastore.Entity;
-import com.google.sps.data.Comment;
-import com.google.appengine.api.datastore.PreparedQuery;
-import com.google.appengine.api.datastore.Query;
-import com.google.appengine.api.datastore.Query.SortDirection;
-import com.google.appengine.api.users.UserService;
-import com.google.appengine.api.users.UserServiceFactory;
-import com.google.appengine.api.datastore.Query.FilterOperator;
-import com.google.appengine.api.datastore.Query.Filter;
-import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.gson.JsonObject;
+import com.google.sps.data.UserPreferences;
 
 @WebServlet("/translate")
 public final class LanguageServlet extends HttpServlet {
@@ -43,42 +29,14 @@ public final class LanguageServlet extends HttpServlet {
     @Override
     public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
         // Get the language input from the form.
-        String language = Optional.ofNullable(request.getParameter("search-by")).orElse("en");
-
-        Entity userInfoEntity = getUserInfoEntity();
+        String language = Optional.ofNullable(request.getParameter("translate-comments")).orElse("en");
 
         // Update the language property
-        userInfoEntity.setProperty("language", language);
-        DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-        // Add the updated entity back in the datastore
-        datastore.put(userInfoEntity);
+        JsonObject patch = new JsonObject();
+        patch.addProperty("language", language);
+        UserPreferences.tryUpdate(request, patch);
 
         response.sendRedirect("/contact.html");
         return;
     }
-
-    // Accesses the datastore to get the UserInfo entity. Returns the entity or null if one does not exist.
-    private Entity getUserInfoEntity() {
-        try {
-            UserService userService = UserServiceFactory.getUserService();
-            String id = userService.getCurrentUser().getUserId();
-            DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-            Filter queryFilter = new FilterPredicate("id", Query.FilterOperator.EQUAL, id);
-            Query query = new Query("UserInfo").setFilter(queryFilter);
-            PreparedQuery results = datastore.prepare(query); 
-            Entity userInfoEntity = results.asSingleEntity(); 
-
-            return userInfoEntity;
-
-        } catch (NullPointerException e) {
-            // If the user is not logged in, return default user entity
-            Entity defaultEntity = new Entity("UserInfo");
-            defaultEntity.setProperty("max", 10);
-            defaultEntity.setProperty("page", 1);
-            defaultEntity.setProperty("language", "en");
-            defaultEntity.setProperty("filter", "recent");
-            defaultEntity.setProperty("searchBy", "name");
-            return defaultEntity;
-        }
-    }
 }
@@ -17,8 +17,7 @@ package com.google.sps.servlets;
 import com.google.appengine.api.datastore.*;
 import com.google.appengine.api.users.UserService;
 import com.google.appengine.api.users.UserServiceFactory;
-import com.google.appengine.api.datastore.Query.Filter;
-import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.sps.data.UserInfoRepository;
 import java.io.IOException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
@@ -35,7 +34,7 @@ public class LoginStatusServlet extends HttpServlet {
         UserService userService = UserServiceFactory.getUserService();
 
         if (userService.isUserLoggedIn()) {
-            Entity userInfoEntity = getUserInfoEntity();
+            Entity userInfoEntity = UserInfoRepository.get(request);
 
             String where = "/contact.html";
             try {
@@ -51,7 +50,7 @@ public class LoginStatusServlet extends HttpServlet {
                 logoutUrl = userService.createLogoutURL("/contact.html");
             }
 
-            String username = getUsername(userService.getCurrentUser().getUserId());
+            String username = getUsername(request);
 
             if (username == null) {
                 response.getWriter().println("{\"status\": \"True\", \"logoutUrl\": \"" + logoutUrl + "\", \"username\": \"null\"}");
@@ -65,13 +64,9 @@ public class LoginStatusServlet extends HttpServlet {
         }
     }
 
-    // Returns the username that corresponds to the id that was given or null if there is no username linked to that id.
-    private String getUsername(String id) {
-        DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-        Filter queryFilter = new FilterPredicate("id", Query.FilterOperator.EQUAL, id);
-        Query query = new Query("UserInfo").setFilter(queryFilter);
-        PreparedQuery results = datastore.prepare(query); 
-        Entity entity = results.asSingleEntity(); 
+    // Returns the username of the currently logged in user or null if there is no username linked to that user.
+    private String getUsername(HttpServletRequest request) {
+        Entity entity = UserInfoRepository.get(request);
 
         if (entity == null) {
             return null;
@@ -80,17 +75,4 @@ public class LoginStatusServlet extends HttpServlet {
         String username = (String) entity.getProperty("username");
         return username;     
     }
-
-    // Accesses the datastore to get the UserInfo entity. Returns the entity or null if one does not exist.
-    private Entity getUserInfoEntity() {
-        UserService userService = UserServiceFactory.getUserService();
-        String id = userService.getCurrentUser().getUserId();
-        DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-        Filter queryFilter = new FilterPredicate("id", Query.FilterOperator.EQUAL, id);
-        Query query = new Query("UserInfo").setFilter(queryFilter);
-        PreparedQuery results = datastore.prepare(query); 
-        Entity userInfoEntity = results.asSingleEntity(); 
-
-        return userInfoEntity;
-    }
 }
@@ -19,23 +19,9 @@ import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Iterator;
 import java.util.Optional;
-import com.google.gson.Gson;
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
-import com.google.appengine.api.datastore.Entity;
-import com.google.sps.data.Comment;
-import com.google.appengine.api.datastore.PreparedQuery;
-import com.google.appengine.api.datastore.Query;
-import com.google.appengine.api.datastore.Query.SortDirection;
-import com.google.appengine.api.users.UserService;
-import com.google.appengine.api.users.UserServiceFactory;
-import com.google.appengine.api.datastore.Query.FilterOperator;
-import com.google.appengine.api.datastore.Query.Filter;
-import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.gson.JsonObject;
+import com.google.sps.data.UserPreferences;
 
 @WebServlet("/max-comments")
 public final class MaxCommentsServlet extends HttpServlet {
@@ -57,39 +43,13 @@ public final class MaxCommentsServlet extends HttpServlet {
                 return;
             }
 
-            // Only update maxComments if tempMax was not negative.
-            if (tempMax > 0)
-            {
-                changeUserInfoMax(tempMax);
-            }
-
-            response.sendRedirect("/contact.html");
-            return;
+            // Values that are not positive or above 100 are ignored. A new page size also sends the user back to the first page.
+            JsonObject patch = new JsonObject();
+            patch.addProperty("max", tempMax);
+            UserPreferences.tryUpdate(request, patch);
         }
 
         response.sendRedirect("/contact.html");
         return;
     }
-
-    // Accesses the datastore to get the UserInfo entity. Returns the entity or null if one does not exist.
-    private Entity getUserInfoEntity() {
-        UserService userService = UserServiceFactory.getUserService();
-        String id = userService.getCurrentUser().getUserId();
-        DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-        Filter queryFilter = new FilterPredicate("id", Query.FilterOperator.EQUAL, id);
-        Query query = new Query("UserInfo").setFilter(queryFilter);
-        PreparedQuery results = datastore.prepare(query); 
-        Entity userInfoEntity = results.asSingleEntity(); 
-
-        return userInfoEntity;
-    }
-
-    // Changes the value of the maximum number of comment per page property
-    private void changeUserInfoMax(long newMax) {
-        Entity userInfoEntity = getUserInfoEntity();
-
-        userInfoEntity.setProperty("max", newMax);
-        DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-        datastore.put(userInfoEntity);
-    }
 }
@@ -0,0 +1,62 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.google.sps.data.Metrics;
+
+@WebServlet("/metrics")
+public final class MetricsServlet extends HttpServlet {
+
+    // Token that a scraper sends as "Authorization: Bearer <token>". Empty means only signed in admins can read them.
+    private static final String TOKEN = System.getProperty("sps.metrics.token", "");
+
+    // Responds with the request and dependency latencies of this instance, in the Prometheus text format. Every
+    // instance keeps its own metrics, so they have to be summed across instances.
+    @Override
+    public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!hasToken(request) && !isAdmin()) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+
+        response.setContentType("text/plain; version=0.0.4; charset=utf-8");
+        Metrics.write(response.getWriter());
+    }
+
+    // Returns whether the request carries the scrape token. The comparison takes the same time wherever the tokens
+    // differ, so the token cannot be guessed one character at a time.
+    private static boolean hasToken(HttpServletRequest request) {
+        String authorization = request.getHeader("Authorization");
+        if (TOKEN.isEmpty() || authorization == null || !authorization.startsWith("Bearer ")) {
+            return false;
+        }
+        byte[] sent = authorization.substring("Bearer ".length()).getBytes(StandardCharsets.UTF_8);
+        return MessageDigest.isEqual(sent, TOKEN.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static boolean isAdmin() {
+        UserService userService = UserServiceFactory.getUserService();
+        return userService.isUserLoggedIn() && userService.isUserAdmin();
+    }
+}
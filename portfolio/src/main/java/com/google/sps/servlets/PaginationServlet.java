@@ -19,37 +19,38 @@ import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Iterator;
 import java.util.Optional;
-import com.google.gson.Gson;
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.gson.JsonObject;
 import com.google.appengine.api.datastore.Entity;
-import com.google.sps.data.Comment;
-import com.google.appengine.api.datastore.PreparedQuery;
-import com.google.appengine.api.datastore.Query;
-import com.google.appengine.api.datastore.Query.SortDirection;
-import com.google.appengine.api.users.UserService;
-import com.google.appengine.api.users.UserServiceFactory;
-import com.google.appengine.api.datastore.Query.FilterOperator;
-import com.google.appengine.api.datastore.Query.Filter;
-import com.google.appengine.api.datastore.Query.FilterPredicate;
-import com.google.appengine.api.datastore.FetchOptions;
+import com.google.sps.data.CommentVersion;
+import com.google.sps.data.Stores;
+import com.google.sps.data.UserInfoRepository;
+import com.google.sps.data.UserPreferences;
 
 @WebServlet("/pagination")
 public final class PaginationServlet extends HttpServlet {
 
     @Override
     public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-        Entity userInfoEntity = getUserInfoEntity();
+        Entity userInfoEntity = UserInfoRepository.getOrDefault(request);
 
         // Prepare information to be passed as a json
-        long total = getTotal();
-        long max = (long) Optional.ofNullable(userInfoEntity.getProperty("max")).orElse(10);
-        long page = (long) Optional.ofNullable(userInfoEntity.getProperty("page")).orElse(1);
+        long version = Stores.comments().getVersion();
+        long max = (long) Optional.ofNullable(userInfoEntity.getProperty("max")).orElse(10L);
+        long page = (long) Optional.ofNullable(userInfoEntity.getProperty("page")).orElse(1L);
         String filter = (String) Optional.ofNullable(userInfoEntity.getProperty("filter")).orElse("recent");
+
+        // Answer with 304 Not Modified, without counting the comments, if the client already has this information.
+        String eTag = CommentVersion.getETag(version, max, page, filter);
+        response.setHeader("Cache-Control", "no-cache");
+        response.setHeader("ETag", eTag);
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null && ifNoneMatch.contains(eTag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        long total = getTotal(version);
         
         // Convert to json.
         String json = "{\"total\": " + total + ", \"max\": " + max + ", \"page\": " + page + ", \"filter\": \"" + filter + "\"}";
@@ -59,46 +60,31 @@ public final class PaginationServlet extends HttpServlet {
 
     @Override
     public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
-        Entity userInfoEntity = getUserInfoEntity();
+        String cursor = Optional.ofNullable(request.getParameter("cursor")).orElse(null);
+        String direction = Optional.ofNullable(request.getParameter("direction")).orElse(null);
 
-        // Update the page property of UserInfo.
-        long newPage = Long.parseLong(Optional.ofNullable(request.getParameter("i")).orElse(null)) + 1;
-        userInfoEntity.setProperty("page", newPage);
-        DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-        datastore.put(userInfoEntity);
+        JsonObject patch = new JsonObject();
+        if (direction != null) {
+            patch.addProperty("direction", direction);
+            if (cursor != null) {
+                patch.addProperty("cursor", cursor);
+            }
+        } else {
+            // Jump straight to the page number that was clicked.
+            try {
+                patch.addProperty("page", Long.parseLong(Optional.ofNullable(request.getParameter("i")).orElse(null)) + 1);
+            } catch (NumberFormatException e) {
+                response.sendRedirect("/contact.html");
+                return;
+            }
+        }
+        UserPreferences.tryUpdate(request, patch);
 
         response.sendRedirect("/contact.html");
         return;
     }
 
-    // Accesses the datastore to get the UserInfo entity. Returns the entity or null if one does not exist.
-    private Entity getUserInfoEntity() {
-        try {
-            UserService userService = UserServiceFactory.getUserService();
-            String id = userService.getCurrentUser().getUserId();
-            DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-            Filter queryFilter = new FilterPredicate("id", Query.FilterOperator.EQUAL, id);
-            Query query = new Query("UserInfo").setFilter(queryFilter);
-            PreparedQuery results = datastore.prepare(query); 
-            Entity userInfoEntity = results.asSingleEntity(); 
-
-            return userInfoEntity;
-
-        } catch (NullPointerException e) {
-            // If the user is not logged in, return default user entity
-            Entity defaultEntity = new Entity("UserInfo");
-            defaultEntity.setProperty("max", (long) 10);
-            defaultEntity.setProperty("page", (long) 1);
-            defaultEntity.setProperty("language", "en");
-            defaultEntity.setProperty("filter", "recent");
-            defaultEntity.setProperty("searchBy", "name");
-            return defaultEntity;
-        }
-    }
-
-    private long getTotal() {
-        DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-        Query query = new Query("Comment");
-        return datastore.prepare(query).countEntities(FetchOptions.Builder.withDefaults());
+    private long getTotal(long version) {
+        return Stores.comments().count(version);
     }
 }
@@ -0,0 +1,61 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.io.IOException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.appengine.api.datastore.Entity;
+import com.google.sps.data.UserInfoRepository;
+import com.google.sps.data.UserPreferences;
+
+@WebServlet("/preferences")
+public final class PreferencesServlet extends HttpServlet {
+
+    @Override
+    public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Entity userInfoEntity = UserInfoRepository.getOrDefault(request);
+
+        response.setContentType("application/json;");
+        response.getWriter().println(UserPreferences.toJson(userInfoEntity));
+    }
+
+    // Applies a JSON object with any subset of the preferences in one transaction and answers with all of the
+    // preferences as they are now stored, so that the client can load the matching comment page right away.
+    @Override
+    public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Entity userInfoEntity;
+        try {
+            JsonObject patch = JsonParser.parseReader(request.getReader()).getAsJsonObject();
+            userInfoEntity = UserPreferences.update(request, patch);
+        } catch (JsonParseException | IllegalStateException | IllegalArgumentException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+
+        if (userInfoEntity == null) {
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
+
+        response.setContentType("application/json;");
+        response.getWriter().println(UserPreferences.toJson(userInfoEntity));
+    }
+}
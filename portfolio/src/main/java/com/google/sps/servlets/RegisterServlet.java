@@ -17,20 +17,20 @@ package com.google.sps.servlets;
 import com.google.appengine.api.datastore.*;
 import com.google.appengine.api.users.UserService;
 import com.google.appengine.api.users.UserServiceFactory;
-import com.google.appengine.api.datastore.Query.Filter;
-import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.sps.data.Stores;
+import com.google.sps.data.UserInfoRepository;
 import java.io.IOException;
 import java.util.Optional;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.util.ArrayList;
-import java.util.List;
 
 @WebServlet("/register")
 public class RegisterServlet extends HttpServlet {
 
+    private static final String USERNAME_TAKEN = "The username is taken, go back and choose another one";
+
     @Override
     public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
         UserService userService = UserServiceFactory.getUserService();
@@ -40,9 +40,13 @@ public class RegisterServlet extends HttpServlet {
         }
 
         String username = Optional.ofNullable(request.getParameter("user-username")).orElse(null);
+        if (username == null || username.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Choose a username");
+            return;
+        }
         // Ask for username again if the username chosen was not available.
         if (!usernameAvailable(username)) {
-            response.sendRedirect("/contact.html");
+            response.sendError(HttpServletResponse.SC_CONFLICT, USERNAME_TAKEN);
             return;
         }
 
@@ -50,7 +54,6 @@ public class RegisterServlet extends HttpServlet {
 
         String id = userService.getCurrentUser().getUserId();
 
-        DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
         Entity entity = new Entity("UserInfo", id);
         entity.setProperty("id", id);
         entity.setProperty("username", username);
@@ -60,32 +63,27 @@ public class RegisterServlet extends HttpServlet {
         // Set name as the default search by method when a user is created
         entity.setProperty("searchBy", "name");
         // Set 1 as the default page number after registering
-        entity.setProperty("page", 1);
+        entity.setProperty("page", 1L);
         // Set 10 as the default maximum number of comments after registering
-        entity.setProperty("max", 10);
+        entity.setProperty("max", 10L);
         // Set English as the default language
         entity.setProperty("language", "en");
         // Set contact.html as the default location after registering
         entity.setProperty("where", "/contact.html");
-        // Keeps track of the keys of comments that were unliked by the user.
-        List<Key> unliked = new ArrayList<Key>();
-        entity.setProperty("unliked", unliked);
-        // Keeps track of the keys of comments that were liked by the user.
-        List<Key> liked = new ArrayList<Key>();
-        entity.setProperty("liked", liked);
-        datastore.put(entity);
+        // The comments the user liked and unliked are kept in Vote entities.
+
+        // Claiming the username fails if another user took it since it was checked, which also asks for it again.
+        if (!UserInfoRepository.register(request, entity)) {
+            response.sendError(HttpServletResponse.SC_CONFLICT, USERNAME_TAKEN);
+            return;
+        }
 
         response.sendRedirect("/contact.html");
     }
 
-    // Returns the true if the username is available to be used, otherwise returns false.
+    // Returns the true if the username is available to be used, otherwise returns false. Most available usernames are
+    // answered from memory.
     private boolean usernameAvailable(String username) {
-        DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-        Filter queryFilter = new FilterPredicate("username", Query.FilterOperator.EQUAL, username);
-        Query query = new Query("UserInfo").setFilter(queryFilter);
-        PreparedQuery results = datastore.prepare(query); 
-        Entity entity = results.asSingleEntity(); 
-
-        return entity == null; 
+        return !Stores.users().isUsernameTaken(username);
     }
 }
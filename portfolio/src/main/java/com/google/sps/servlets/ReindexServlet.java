@@ -0,0 +1,109 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.io.IOException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.QueryResultList;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.google.sps.data.CommentQuery;
+import com.google.sps.data.CommentSearch;
+import com.google.sps.data.CommentSentiment;
+import com.google.sps.data.HotScore;
+import com.google.sps.data.MeteredDatastore;
+
+@WebServlet("/reindex")
+public final class ReindexServlet extends HttpServlet {
+
+    // Comments are root entities, and a cross group transaction can only touch 25 entity groups.
+    private static final int BATCH_SIZE = 20;
+
+    // Adds the search terms and the hot score to a batch of comments that were posted before they existed, and scores
+    // the sentiment of the ones that do not have a score yet. Returns the cursor to pass back in for the next batch,
+    // which is null once every comment was indexed.
+    @Override
+    public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        UserService userService = UserServiceFactory.getUserService();
+        if (!userService.isUserLoggedIn() || !userService.isUserAdmin()) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+
+        FetchOptions fetchOptions = FetchOptions.Builder.withLimit(BATCH_SIZE);
+        Cursor startCursor = CommentQuery.decode(request.getParameter("cursor"));
+        if (startCursor != null) {
+            fetchOptions.startCursor(startCursor);
+        }
+
+        DatastoreService datastore = MeteredDatastore.getDatastoreService();
+        QueryResultList<Entity> results = datastore.prepare(new Query("Comment").setKeysOnly()).asQueryResultList(fetchOptions);
+        List<Key> keys = new ArrayList<Key>();
+        for (Entity entity : results) {
+            keys.add(entity.getKey());
+        }
+
+        // Read and write the comments in a transaction so that votes folded in meanwhile are not lost.
+        TransactionOptions options = TransactionOptions.Builder.withXG(true);
+        Transaction txn = datastore.beginTransaction(options);
+        Map<Key, Entity> commentEntities;
+        try {
+            commentEntities = datastore.get(txn, keys);
+            for (Entity commentEntity : commentEntities.values()) {
+                CommentSearch.index(commentEntity);
+                // Comments posted before the hot order existed are left out of it until they have a score.
+                if (!commentEntity.hasProperty("hot")) {
+                    commentEntity.setProperty("hot", HotScore.compute((long) commentEntity.getProperty("thumbsup"),
+                            (long) commentEntity.getProperty("thumbsdown"), (long) commentEntity.getProperty("time")));
+                }
+            }
+            datastore.put(txn, commentEntities.values());
+            txn.commit();
+        } finally {
+            if (txn.isActive()) {
+                txn.rollback();
+            }
+        }
+
+        // Comments posted before sentiment was scored are left out of the sentiment orders until they have a score.
+        for (Entity commentEntity : commentEntities.values()) {
+            if (!commentEntity.hasProperty("sentiment")) {
+                CommentSentiment.enqueue(commentEntity.getKey().getId());
+            }
+        }
+
+        String next = "null";
+        if (results.size() == BATCH_SIZE) {
+            next = "\"" + CommentQuery.encode(results.getCursor()) + "\"";
+        }
+
+        response.setContentType("application/json;");
+        response.getWriter().println("{\"indexed\": " + keys.size() + ", \"cursor\": " + next + "}");
+    }
+}
@@ -19,61 +19,21 @@ import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Iterator;
-import java.util.Optional;
-import com.google.gson.Gson;
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
-import com.google.appengine.api.datastore.Entity;
-import com.google.sps.data.Comment;
-import com.google.appengine.api.datastore.PreparedQuery;
-import com.google.appengine.api.datastore.Query;
-import com.google.appengine.api.datastore.Query.SortDirection;
-import com.google.appengine.api.users.UserService;
-import com.google.appengine.api.users.UserServiceFactory;
-import com.google.appengine.api.datastore.Query.FilterOperator;
-import com.google.appengine.api.datastore.Query.Filter;
-import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.gson.JsonObject;
+import com.google.sps.data.UserPreferences;
 
 @WebServlet("/reset")
 public final class ResetServlet extends HttpServlet {
 
     @Override
     public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
-        Entity userInfoEntity = getUserInfoEntity();
-
-        // Update the search input property
-        userInfoEntity.setProperty("filter", "recent");
-        // Update the search by property
-        userInfoEntity.setProperty("searchBy", "name");
-        // Update the search input property
-        userInfoEntity.setProperty("searchInput", null);
-        // Update the search input property
-        userInfoEntity.setProperty("max", 10);
-        // Update the search input property
-        userInfoEntity.setProperty("page", 1);
-        // Update the search input property
-        userInfoEntity.setProperty("language", "en");
-        DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-        // Add the updated entity back in the datastore
-        datastore.put(userInfoEntity);
+        // Put the filter, search, maximum number of comments and language back to their defaults and go back to the
+        // first page.
+        JsonObject patch = new JsonObject();
+        patch.addProperty("reset", true);
+        UserPreferences.tryUpdate(request, patch);
 
         response.sendRedirect("/contact.html");
         return;
     }
-
-    // Accesses the datastore to get the UserInfo entity. Returns the entity or null if one does not exist.
-    private Entity getUserInfoEntity() {
-        UserService userService = UserServiceFactory.getUserService();
-        String id = userService.getCurrentUser().getUserId();
-        DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-        Filter queryFilter = new FilterPredicate("id", Query.FilterOperator.EQUAL, id);
-        Query query = new Query("UserInfo").setFilter(queryFilter);
-        PreparedQuery results = datastore.prepare(query); 
-        Entity userInfoEntity = results.asSingleEntity(); 
-
-        return userInfoEntity;
-    }
 }
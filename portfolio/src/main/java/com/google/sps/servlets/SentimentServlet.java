@@ -14,9 +14,7 @@
 
 package com.google.sps.servlets;
 
-import com.google.cloud.language.v1.Document;
-import com.google.cloud.language.v1.LanguageServiceClient;
-import com.google.cloud.language.v1.Sentiment;
+import com.google.sps.data.CommentSentiment;
 import java.io.IOException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
@@ -30,11 +28,8 @@ public class SentimentServlet extends HttpServlet {
     public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
         String quote = request.getParameter("quote");
 
-        Document doc = Document.newBuilder().setContent(quote).setType(Document.Type.PLAIN_TEXT).build();
-        LanguageServiceClient languageService = LanguageServiceClient.create();
-        Sentiment sentiment = languageService.analyzeSentiment(doc).getDocumentSentiment();
-        float score = sentiment.getScore();
-        languageService.close();
+        // Use the shared client instead of building and closing one for every request.
+        float score = CommentSentiment.analyze(quote);
 
         response.setContentType("text/html;");
         response.getWriter().println("<h3 style=\"color:white; text-align:center;\">Sentiment Analysis</h3>");
@@ -0,0 +1,55 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.io.IOException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import com.google.api.gax.rpc.InvalidArgumentException;
+import com.google.appengine.api.datastore.Entity;
+import com.google.sps.data.CommentSentiment;
+import com.google.sps.data.Stores;
+
+@WebServlet(CommentSentiment.TASK_URL)
+public final class SentimentTaskServlet extends HttpServlet {
+
+    // Scores the comment and stores its sentiment. Any exception fails the task, which makes the task queue retry it.
+    @Override
+    public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        // App Engine removes this header from outside requests, so only the task queue can reach this servlet.
+        if (request.getHeader("X-AppEngine-QueueName") == null) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+
+        long id = Long.parseLong(request.getParameter("id"));
+        Entity commentEntity = Stores.comments().get(id);
+        if (commentEntity == null) {
+            // The comment was deleted before it was scored.
+            return;
+        }
+
+        float score;
+        try {
+            score = CommentSentiment.analyze((String) commentEntity.getProperty("content"));
+        } catch (InvalidArgumentException e) {
+            // The API does not support the language of the comment, and retrying will not change that.
+            score = 0;
+        }
+        Stores.comments().setSentiment(id, score);
+    }
+}
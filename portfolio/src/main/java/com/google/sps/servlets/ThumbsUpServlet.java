@@ -19,28 +19,14 @@ import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
-import com.google.gson.Gson;
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import java.util.Collections;
 import com.google.appengine.api.datastore.Entity;
-import com.google.sps.data.Comment;
-import com.google.sps.data.UserInfo;
-import com.google.appengine.api.datastore.PreparedQuery;
-import com.google.appengine.api.datastore.Query;
-import com.google.appengine.api.datastore.Query.SortDirection;
-import com.google.appengine.api.datastore.Key;
-import com.google.appengine.api.datastore.KeyFactory;
-import com.google.appengine.api.datastore.Query.FilterOperator;
-import com.google.appengine.api.datastore.Query.Filter;
-import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.sps.data.CommentEvents;
+import com.google.sps.data.RateLimiter;
+import com.google.sps.data.Stores;
+import com.google.sps.data.UserInfoRepository;
 import com.google.appengine.api.users.UserService;
 import com.google.appengine.api.users.UserServiceFactory;
-import com.google.appengine.api.datastore.Transaction;
-import com.google.appengine.api.datastore.TransactionOptions;
-import com.google.appengine.api.datastore.EntityNotFoundException;
 
 @WebServlet("/thumbsup-data")
 public final class ThumbsUpServlet extends HttpServlet {
@@ -53,111 +39,33 @@ public final class ThumbsUpServlet extends HttpServlet {
             return;
         }
 
-        DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-
-        TransactionOptions options = TransactionOptions.Builder.withXG(true);
-        Transaction txn = datastore.beginTransaction(options);
-        try {
-            Entity userInfoEntity = getUserInfoEntity();
-            UserInfo userInfo = new UserInfo(userInfoEntity);
-
-            // Get comment's id (which was passed as a parameter).
-            long id = Long.parseLong(request.getParameter("id"));
-
-            Entity commentEntity = getCommentEntity(id);
-            if (commentEntity == null) {
-                response.setContentType("text/html;");
-                response.getWriter().println("Unable to get comment.");
-                return;
-            }
-
-            Comment comment = new Comment(commentEntity);
-
-            if (userInfo.isLikedComment(commentEntity)) {
-                comment.decrementThumbsup();
-                comment.decrementPopularity();
-                userInfo.removeFromLikedComments(commentEntity);
-            } else {
-                comment.incrementThumbsup();
-                comment.incrementPopularity();
-                userInfo.addToLikedComments(commentEntity);
-            }
-
-            comment.updateDatabase(commentEntity, txn);
-            userInfo.updateDatabase(userInfoEntity, txn);
-
-            txn.commit();
-        } finally {
-            if (txn.isActive()) {
-                txn.rollback();
-            }
-        }
-
-        response.sendRedirect("/contact.html");
-        return;
-    }
-
-    // Accesses the datastore to get the UserInfo entity. Returns the entity or null if one does not exist.
-    private Entity getCommentEntity(long id) {
-        DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-
-        // Using the id, get the comment's key.
-        Key commentEntityKey;
-        try {
-            commentEntityKey = KeyFactory.createKey("Comment", id);
-        } catch(NullPointerException e) {
-            return null;
+        String userId = userService.getCurrentUser().getUserId();
+        if (!RateLimiter.VOTES.check(userId, response)) {
+            return;
         }
 
-        // Get the comment entity using its key.
-        Entity commentEntity;
-        try {
-            commentEntity = datastore.get(commentEntityKey);
-        } catch(EntityNotFoundException e) {
-            return null;
+        // Only registered users can vote.
+        if (UserInfoRepository.get(request) == null) {
+            response.sendRedirect("/contact.html");
+            return;
         }
 
-        return commentEntity;
-    }
-
-    // Accesses the datastore to get the UserInfo entity. Returns the entity or null if one does not exist.
-    private Entity getUserInfoEntity() {
-        UserService userService = UserServiceFactory.getUserService();
-        String id = userService.getCurrentUser().getUserId();
-        DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-        Filter queryFilter = new FilterPredicate("id", Query.FilterOperator.EQUAL, id);
-        Query query = new Query("UserInfo").setFilter(queryFilter);
-
-        return datastore.prepare(query).asSingleEntity();
-    }
-
-    private void addToLikedComments(Entity userInfoEntity, Entity commentEntity) {
-        DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-        List<Key> liked = (ArrayList<Key>) userInfoEntity.getProperty("liked");
+        // Get comment's id (which was passed as a parameter).
+        long id = Long.parseLong(request.getParameter("id"));
 
-        if (liked == null) {
-            liked =  new ArrayList<Key>();
+        if (!Stores.comments().vote(userId, id, true)) {
+            response.setContentType("text/html;");
+            response.getWriter().println("Unable to get comment.");
+            return;
         }
 
-        liked.add(commentEntity.getKey());
-        userInfoEntity.setProperty("liked", liked);
-        datastore.put(userInfoEntity);
-    }
-
-    private void removeFromLikedComments(Entity userInfoEntity, Entity commentEntity) {
-        DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-        List<Key> liked = (ArrayList<Key>) userInfoEntity.getProperty("liked");
-
-        liked.remove(commentEntity.getKey());
-        userInfoEntity.setProperty("liked", liked);
-        datastore.put(userInfoEntity);
-    }
-
-    private boolean isLikedComment(Entity userInfoEntity, Entity commentEntity) {
-        DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-        List<Key> liked = (ArrayList<Key>) userInfoEntity.getProperty("liked");
-        Key commentKey = commentEntity.getKey();
+        // Show the new counts to the clients that are listening for events.
+        Entity commentEntity = Stores.comments().get(id);
+        if (commentEntity != null) {
+            CommentEvents.publishVotes(Stores.comments().getVotes(Collections.singletonList(commentEntity), -1));
+        }
 
-        return liked != null && liked.contains(commentKey);
+        response.sendRedirect("/contact.html");
+        return;
     }
 }
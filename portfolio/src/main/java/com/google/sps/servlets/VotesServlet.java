@@ -0,0 +1,126 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.io.IOException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.google.sps.data.CommentEvents;
+import com.google.sps.data.RateLimiter;
+import com.google.sps.data.Stores;
+import com.google.sps.data.UserInfoRepository;
+import com.google.sps.data.Vote;
+import com.google.sps.data.VoteBatch;
+import com.google.sps.data.VoteCount;
+
+@WebServlet("/votes")
+public final class VotesServlet extends HttpServlet {
+
+    // Upper bound on the toggles in one request.
+    private static final int MAX_TOGGLES = 100;
+
+    // Applies a JSON array of toggles such as [{"id": 12, "direction": "up"}, {"id": 7, "direction": "down"}] and
+    // answers with the counts and the user's own votes of every comment that was voted on, keyed by comment id.
+    // Toggling the same thumb twice cancels out, so a burst of clicks only costs the commits of the comments whose votes
+    // change. Each of those comments takes one vote from the user's budget, the same as a thumbs up or down would.
+    @Override
+    public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        UserService userService = UserServiceFactory.getUserService();
+        if (!userService.isUserLoggedIn()) {
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
+        String userId = userService.getCurrentUser().getUserId();
+
+        VoteBatch batch = new VoteBatch();
+        try {
+            JsonArray toggles = JsonParser.parseReader(request.getReader()).getAsJsonArray();
+            if (toggles.size() > MAX_TOGGLES) {
+                throw new IllegalArgumentException("At most " + MAX_TOGGLES + " toggles are allowed");
+            }
+            for (JsonElement element : toggles) {
+                JsonObject toggle = element.getAsJsonObject();
+                if (!toggle.has("id") || !toggle.has("direction")) {
+                    throw new IllegalArgumentException("Each toggle needs an id and a direction");
+                }
+                String direction = toggle.get("direction").getAsString();
+                if (!direction.equals("up") && !direction.equals("down")) {
+                    throw new IllegalArgumentException("Unknown direction: " + direction);
+                }
+                batch.toggle(toggle.get("id").getAsLong(), direction.equals("up"));
+            }
+            if (batch.getCommentIds().size() > RateLimiter.VOTES.getBurst()) {
+                throw new IllegalArgumentException("At most " + RateLimiter.VOTES.getBurst() + " comments are allowed");
+            }
+        } catch (JsonParseException | IllegalStateException | IllegalArgumentException
+                | UnsupportedOperationException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+
+        // An empty batch still takes one vote, so that it cannot be sent for free.
+        if (!RateLimiter.VOTES.check(userId, Math.max(1, batch.getCommentIds().size()), response)) {
+            return;
+        }
+
+        // Only registered users can vote.
+        if (UserInfoRepository.get(request) == null) {
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
+
+        List<Entity> commentEntities = new ArrayList<Entity>();
+        if (!batch.isEmpty()) {
+            commentEntities = Stores.comments().vote(userId, batch);
+        }
+
+        List<Long> commentIds = new ArrayList<Long>();
+        for (Entity commentEntity : commentEntities) {
+            commentIds.add(commentEntity.getKey().getId());
+        }
+        Map<Long, VoteCount> counts = Stores.comments().getVotes(commentEntities, -1);
+        Map<Long, Vote> viewerVotes = Stores.comments().getViewerVotes(userId, commentIds);
+        CommentEvents.publishVotes(counts);
+
+        JsonObject json = new JsonObject();
+        for (long commentId : commentIds) {
+            VoteCount count = counts.get(commentId);
+            Vote vote = viewerVotes.get(commentId);
+
+            JsonObject comment = new JsonObject();
+            comment.addProperty("thumbsup", count.getThumbsup());
+            comment.addProperty("thumbsdown", count.getThumbsdown());
+            comment.addProperty("liked", vote != null && vote.isLiked());
+            comment.addProperty("unliked", vote != null && vote.isUnliked());
+            json.add(Long.toString(commentId), comment);
+        }
+
+        response.setContentType("application/json;");
+        response.getWriter().println(json);
+    }
+}
@@ -17,8 +17,8 @@ package com.google.sps.servlets;
 import com.google.appengine.api.datastore.*;
 import com.google.appengine.api.users.UserService;
 import com.google.appengine.api.users.UserServiceFactory;
-import com.google.appengine.api.datastore.Query.Filter;
-import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.sps.data.UserPreferences;
+import com.google.gson.JsonObject;
 import java.io.IOException;
 import java.util.Optional;
 import javax.servlet.annotation.WebServlet;
@@ -40,29 +40,11 @@ public class WhereServlet extends HttpServlet {
 
         String newLocation = Optional.ofNullable(request.getParameter("newLocation")).orElse("/index.html");
 
-        Entity userInfoEntity = getUserInfoEntity();
-
         // Update the where property
-        userInfoEntity.setProperty("where", newLocation);
-
-        DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-        
-        // Add the updated entity back in the datastore
-        datastore.put(userInfoEntity);
+        JsonObject patch = new JsonObject();
+        patch.addProperty("where", newLocation);
+        UserPreferences.tryUpdate(request, patch);
 
         return;
     }
-
-    // Accesses the datastore to get the UserInfo entity. Returns the entity or null if one does not exist.
-    private Entity getUserInfoEntity() {
-        UserService userService = UserServiceFactory.getUserService();
-        String id = userService.getCurrentUser().getUserId();
-        DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-        Filter queryFilter = new FilterPredicate("id", Query.FilterOperator.EQUAL, id);
-        Query query = new Query("UserInfo").setFilter(queryFilter);
-        PreparedQuery results = datastore.prepare(query); 
-        Entity userInfoEntity = results.asSingleEntity(); 
-
-        return userInfoEntity;
-    }
 }
@@ -13,18 +13,42 @@
 // limitations under the License.
 
 function getComments() {
-    // Get the username of the user who is currently logged in. Null if the user is not logged in.
-    var username = null;
-    fetch("/login-status").then(response => response.json()).then((loginInfo) => {
-        username = loginInfo.username;
-    });
-
-    // Display the comments
-    fetch('/data').then(response => response.json()).then((comments) => {
-        comments.forEach((comment) => {
+    // Display the comments once the username of the user who is logged in is known. It is null if the user is not
+    // logged in.
+    const commentPageRequest = fetch('/data').then(response => response.json());
+    Promise.all([getBootstrap(), commentPageRequest]).then(([loginInfo, commentPage]) => {
+        const username = loginInfo.username;
+        commentPage.comments.forEach((comment) => {
             document.getElementById('comments-list').appendChild(createCommentBox(comment, username));
         })
+
+        // Display the previous and next buttons using the cursors of the neighbouring pages.
+        if (commentPage.prev != null) {
+            document.getElementById('cursor-pager').appendChild(createCursorBox('Previous', 'prev', commentPage.prev));
+        }
+        if (commentPage.next != null) {
+            document.getElementById('cursor-pager').appendChild(createCursorBox('Next', 'next', commentPage.next));
+        }
+    });
+}
+
+function createCursorBox(label, direction, cursor) {
+    const linkElement = document.createElement('a');
+    linkElement.innerHTML = label;
+
+    const itemElement = document.createElement('li');
+    itemElement.className = direction === 'prev' ? 'previous' : 'next';
+    itemElement.appendChild(linkElement);
+    itemElement.addEventListener('click', () => {
+        // Reload page to update it once the new page was stored
+        changeCursor(direction, cursor).then(() => location.reload());
     });
+
+    return itemElement;
+}
+
+function changeCursor(direction, cursor) {
+  return updatePreferences({direction: direction, cursor: cursor});
 }
 
 function createCommentBox(comment, username) {
@@ -63,33 +87,36 @@ function createCommentBox(comment, username) {
 
     const upIconElement = document.createElement('span');
     upIconElement.className = 'glyphicon glyphicon-thumbs-up';
-    upIconElement.addEventListener('click', () => {
-        upComment(comment);
+    upIconElement.addEventListener('click', () => toggleVote(comment.id, 'up'));
 
-        // Reload page to update it
-        location.reload();
-    });
+    const upCountElement = document.createTextNode('');
 
     const upElement = document.createElement('p');
-    upElement.innerHTML = comment.thumbsup;
     upElement.style.display = 'inline';
     upElement.style.padding = '20px';
+    upElement.appendChild(upCountElement);
     upElement.appendChild(upIconElement);
 
     const downIconElement = document.createElement('span');
     downIconElement.className = 'glyphicon glyphicon-thumbs-down';
-    downIconElement.addEventListener('click', () => {
-        downComment(comment);
+    downIconElement.addEventListener('click', () => toggleVote(comment.id, 'down'));
 
-        // Reload page to update it
-        location.reload();
-    });
+    const downCountElement = document.createTextNode('');
 
     const downElement = document.createElement('p');
-    downElement.innerHTML = comment.thumbsdown;
     downElement.style.display = 'inline';
+    downElement.appendChild(downCountElement);
     downElement.appendChild(downIconElement);
 
+    commentBoxes[comment.id] = commmentElement;
+    voteBoxes[comment.id] = {
+        upIcon: upIconElement,
+        upCount: upCountElement,
+        downIcon: downIconElement,
+        downCount: downCountElement
+    };
+    showVotes(comment.id, comment);
+
     const reactionsLineElement = document.createElement('div');
     reactionsLineElement.className = 'd-flex w-100 justify-content-between';
     reactionsLineElement.style.textAlign = 'right';
@@ -132,16 +159,106 @@ function deleteComment(comment) {
   fetch('/delete-data', {method: 'POST', body: params});
 }
 
-function upComment(comment) {
-  const params = new URLSearchParams();
-  params.append('id', comment.id);
-  fetch('/thumbsup-data', {method: 'POST', body: params});
+// The element of each comment on the page, keyed by comment id.
+const commentBoxes = {};
+// The elements that show the votes of each comment on the page, keyed by comment id.
+const voteBoxes = {};
+// Toggles that were clicked but not sent yet. They go out together once the clicks stop for a moment.
+let pendingVotes = [];
+let pendingVotesTimer = null;
+const VOTE_DELAY_MILLIS = 500;
+// The server takes at most this many comments in one request, the burst of its vote budget.
+const MAX_VOTE_COMMENTS = 10;
+
+// Flips the thumb right away and queues the toggle, so that a burst of clicks is sent as one request.
+function toggleVote(commentId, direction) {
+    const box = voteBoxes[commentId];
+    const votes = box.votes;
+    if (direction === 'up') {
+        votes.thumbsup += votes.liked ? -1 : 1;
+        votes.liked = !votes.liked;
+    } else {
+        votes.thumbsdown += votes.unliked ? -1 : 1;
+        votes.unliked = !votes.unliked;
+    }
+    showVotes(commentId, votes);
+
+    pendingVotes.push({id: commentId, direction: direction});
+    clearTimeout(pendingVotesTimer);
+    if (new Set(pendingVotes.map(toggle => toggle.id)).size >= MAX_VOTE_COMMENTS) {
+        sendVotes();
+    } else {
+        pendingVotesTimer = setTimeout(sendVotes, VOTE_DELAY_MILLIS);
+    }
 }
 
-function downComment(comment) {
-  const params = new URLSearchParams();
-  params.append('id', comment.id);
-  fetch('/thumbsdown-data', {method: 'POST', body: params});
+// Sends the queued toggles and shows the counts the server answers with. Reloads the page if they were not applied,
+// so that it does not keep showing votes that were never stored.
+function sendVotes() {
+    const toggles = pendingVotes;
+    pendingVotes = [];
+    fetch('/votes', {method: 'POST', body: JSON.stringify(toggles)})
+        .then(response => response.ok ? response.json() : Promise.reject(response.status))
+        .then((comments) => {
+            // Clicks made while the request was out are already shown and will be corrected by the next one.
+            if (pendingVotes.length === 0) {
+                Object.keys(comments).forEach(id => showVotes(id, comments[id]));
+            }
+        })
+        .catch(() => location.reload());
+}
+
+function showVotes(commentId, votes) {
+    const box = voteBoxes[commentId];
+    box.votes = {thumbsup: votes.thumbsup, thumbsdown: votes.thumbsdown, liked: votes.liked, unliked: votes.unliked};
+    box.upCount.nodeValue = votes.thumbsup;
+    box.downCount.nodeValue = votes.thumbsdown;
+
+    // Highlight the thumbs the user already gave this comment.
+    box.upIcon.style.color = votes.liked ? '#337ab7' : '';
+    box.downIcon.style.color = votes.unliked ? '#337ab7' : '';
+}
+
+// Applies the comments that are posted, deleted and voted on while the page is open, instead of reloading it.
+function listenForEvents() {
+    if (!window.EventSource) {
+        return;
+    }
+
+    const events = new EventSource('/events');
+    events.addEventListener('create', (event) => {
+        const comment = JSON.parse(event.data);
+        getBootstrap().then((loginInfo) => {
+            // New comments only belong at the top of the first page of the most recent comments.
+            const preferences = loginInfo.preferences;
+            if (commentBoxes[comment.id] || preferences.filter !== 'recent' || preferences.page !== 1
+                    || preferences.searchInput) {
+                return;
+            }
+            const list = document.getElementById('comments-list');
+            list.insertBefore(createCommentBox(comment, loginInfo.username), list.firstChild);
+        });
+    });
+    events.addEventListener('delete', (event) => {
+        const id = JSON.parse(event.data).id;
+        if (commentBoxes[id]) {
+            commentBoxes[id].remove();
+            delete commentBoxes[id];
+            delete voteBoxes[id];
+        }
+    });
+    events.addEventListener('votes', (event) => {
+        const counts = JSON.parse(event.data);
+        const box = voteBoxes[counts.id];
+        // Toggles that were not sent yet are already counted on the page, and the answer to them will correct it.
+        if (!box || pendingVotes.some(toggle => toggle.id === counts.id)) {
+            return;
+        }
+        showVotes(counts.id, {thumbsup: counts.thumbsup, thumbsdown: counts.thumbsdown, liked: box.votes.liked,
+                unliked: box.votes.unliked});
+    });
+    // The page fell too far behind to catch up.
+    events.addEventListener('reset', () => location.reload());
 }
 
 function getPagination() {
@@ -162,26 +279,22 @@ function createPaginationBox(i) {
     itemElement.className = 'page-item';
     itemElement.appendChild(linkElement);
     itemElement.addEventListener('click', () => {
-        changePages(i);
-
-        // Reload page to update it
-        location.reload();
+        // Reload page to update it once the new page was stored
+        changePages(i).then(() => location.reload());
     });
 
     return itemElement;
 }
 
 function changePages(i) {
-  const params = new URLSearchParams();
-  params.append('i', i);
-  fetch('/pagination', {method: 'POST', body: params});
+  return updatePreferences({page: i + 1});
 }
 
 function getSubmitForm() {
-    fetch("/login-status").then(response => response.json()).then((loginInfo) => {
+    getBootstrap().then((loginInfo) => {
         // Display submit comment form only if the user is logged in. Otherwise, display login form.
-        if (loginInfo.status === "True") {
-            if (loginInfo.username === "null") {
+        if (loginInfo.loggedIn) {
+            if (loginInfo.username === null) {
                 window.location.replace("/username.html");
                 return;
             }
@@ -12,10 +12,20 @@
 // See the License for the specific language governing permissions and
 // limitations under the License.
 
+// The login state, username and preferences of the user, fetched once per page and shared by every script on it.
+let bootstrap = null;
+
+function getBootstrap() {
+    if (bootstrap === null) {
+        bootstrap = fetch('/bootstrap').then(response => response.json());
+    }
+    return bootstrap;
+}
+
 function getLoginLogout() {
-    fetch("/login-status").then(response => response.json()).then((loginInfo) => {
+    getBootstrap().then((loginInfo) => {
         // Display Log Out if the user is logged in. Otherwise, display Log In.
-        if (loginInfo.status === "True") {
+        if (loginInfo.loggedIn) {
             const loginNav = document.getElementById("login-logout");
             loginNav.innerHTML = "LOG OUT";
             loginNav.href = loginInfo.logoutUrl;
@@ -28,7 +38,12 @@ function getLoginLogout() {
 }
 
 function changeWhere(newLocation) {
-    const params = new URLSearchParams();
-    params.append('newLocation', newLocation);
-    fetch('/where', {method: 'POST', body: params});
+    updatePreferences({where: newLocation});
+}
+
+// Changes any of the preferences stored for the user in one request.
+// Resolves with all of the stored preferences, or null if nothing was stored.
+function updatePreferences(patch) {
+    return fetch('/preferences', {method: 'POST', body: JSON.stringify(patch)})
+        .then(response => response.ok ? response.json() : null);
 }
@@ -0,0 +1,136 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests that the sharded comment counter counts every comment once, whether it was posted before it or not. */
+public final class CommentStatsTest {
+
+    // Apply every write right away, so that the legacy count's query sees the comments that were just stored.
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig().setApplyAllHighRepJobPolicy());
+    private DatastoreCommentStore store;
+
+    @Before
+    public void setUp() {
+        helper.setUp();
+        CommentStats.clearCache();
+        store = new DatastoreCommentStore();
+    }
+
+    @After
+    public void tearDown() {
+        helper.tearDown();
+    }
+
+    @Test
+    public void addAndDeleteKeepTheTotal() {
+        long first = store.add(createComment(1));
+        long second = store.add(createComment(2));
+        long third = store.add(createComment(3));
+        assertEquals(3L, readTotal());
+
+        store.delete(first);
+        assertEquals(2L, readTotal());
+
+        // Deleting a comment that is already gone does not uncount anything.
+        store.deleteAll(Arrays.asList(first, second, third));
+        assertEquals(0L, readTotal());
+    }
+
+    @Test
+    public void cachedTotalFollowsWritesOfThisInstance() {
+        assertEquals(0L, CommentStats.getTotal(-1));
+
+        long id = store.add(createComment(1));
+        assertEquals(1L, CommentStats.getTotal(-1));
+
+        store.delete(id);
+        assertEquals(0L, CommentStats.getTotal(-1));
+    }
+
+    @Test
+    public void legacyCommentsAreCountedOnce() {
+        putLegacyComment(1);
+        putLegacyComment(2);
+        store.add(createComment(3));
+        assertEquals(1L, readTotal());
+
+        assertEquals(3, store.countLegacyComments(10));
+        assertEquals(3L, readTotal());
+
+        // The first pass went through every comment, so later runs count nothing.
+        assertEquals(0, store.countLegacyComments(10));
+        assertEquals(3L, readTotal());
+    }
+
+    @Test
+    public void legacyCountResumesWhereItStopped() {
+        for (int i = 1; i <= 5; i++) {
+            putLegacyComment(i);
+        }
+
+        assertEquals(2, store.countLegacyComments(2));
+        assertEquals(2L, readTotal());
+        assertEquals(2, store.countLegacyComments(2));
+        assertEquals(1, store.countLegacyComments(2));
+        assertEquals(5L, readTotal());
+        assertEquals(0, store.countLegacyComments(2));
+    }
+
+    @Test
+    public void deletingUncountedCommentKeepsTheTotal() {
+        putLegacyComment(1);
+        store.add(createComment(2));
+
+        store.delete(1);
+        assertEquals(1L, readTotal());
+    }
+
+    // Reads the total from the shards rather than from the cache.
+    private static long readTotal() {
+        CommentStats.clearCache();
+        return CommentStats.getTotal(-1);
+    }
+
+    // Stores a comment the way it was stored before the counter existed, without counting it.
+    private static void putLegacyComment(long id) {
+        DatastoreServiceFactory.getDatastoreService().put(createComment(id));
+    }
+
+    static Entity createComment(long id) {
+        Entity commentEntity = new Entity("Comment", id);
+        commentEntity.setProperty("content", "Comment number " + id);
+        commentEntity.setProperty("time", 1590000000000L + id * 1000L);
+        commentEntity.setProperty("thumbsup", 0L);
+        commentEntity.setProperty("thumbsdown", 0L);
+        commentEntity.setProperty("popularity", 0L);
+        commentEntity.setProperty("hot", HotScore.compute(0, 0, 1590000000000L + id * 1000L));
+        commentEntity.setProperty("name", "Visitor");
+        commentEntity.setProperty("email", "visitor@example.com");
+        commentEntity.setProperty("username", "visitor");
+        return commentEntity;
+    }
+}
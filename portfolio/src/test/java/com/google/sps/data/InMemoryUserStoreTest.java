@@ -0,0 +1,83 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests that the memory engine hands back UserInfo entities the way the Datastore would. */
+public final class InMemoryUserStoreTest {
+
+    private final LocalServiceTestHelper helper = new LocalServiceTestHelper();
+    private InMemoryUserStore store;
+
+    @Before
+    public void setUp() {
+        helper.setUp();
+        store = new InMemoryUserStore();
+    }
+
+    @After
+    public void tearDown() {
+        helper.tearDown();
+    }
+
+    @Test
+    public void registerThenGetReadsNumbersAsLongs() {
+        assertTrue(store.register(createUser("1", "Alice")));
+
+        Entity stored = store.get("1");
+        assertEquals(1L, stored.getProperty("page"));
+        assertEquals(10L, stored.getProperty("max"));
+        // Reads the entity the way the servlets do, which casts the numbers to long.
+        new UserInfo(stored);
+    }
+
+    @Test
+    public void updateReadsNumbersAsLongs() {
+        store.put(createUser("1", "Alice"));
+
+        Entity updated = store.update("1", userInfoEntity -> userInfoEntity.setProperty("max", 20));
+        assertEquals(20L, updated.getProperty("max"));
+        assertEquals(20L, store.get("1").getProperty("max"));
+    }
+
+    @Test
+    public void registerRejectsUsernameOfAnotherUserInAnyCase() {
+        assertTrue(store.register(createUser("1", "Alice")));
+
+        assertFalse(store.register(createUser("2", "alice")));
+        assertTrue(store.isUsernameTaken("ALICE"));
+    }
+
+    // Creates a UserInfo entity with int numbers, like RegisterServlet used to.
+    private static Entity createUser(String id, String username) {
+        Entity entity = new Entity("UserInfo", id);
+        entity.setProperty("id", id);
+        entity.setProperty("username", username);
+        entity.setProperty("page", 1);
+        entity.setProperty("max", 10);
+        entity.setProperty("filter", "recent");
+        entity.setProperty("searchBy", "name");
+        return entity;
+    }
+}
@@ -0,0 +1,62 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/** Tests the token buckets of the rate limiter, which keep no state outside of the process. */
+public final class RateLimiterTest {
+
+    // POSTS allows 6 posts a minute, one every 10 seconds, and 3 at once.
+    private static final RateLimiter limiter = RateLimiter.POSTS;
+
+    @Test
+    public void allowsBurstThenAsksToWait() {
+        String key = "burst";
+        for (int i = 0; i < limiter.getBurst(); i++) {
+            assertEquals(0L, limiter.tryAcquire(key, 1));
+        }
+
+        long waitNanos = limiter.tryAcquire(key, 1);
+        assertTrue(waitNanos > 0);
+        assertTrue(waitNanos <= TimeUnit.SECONDS.toNanos(10));
+    }
+
+    @Test
+    public void takesSeveralTokensAtOnce() {
+        String key = "several";
+        assertEquals(0L, limiter.tryAcquire(key, limiter.getBurst()));
+        assertTrue(limiter.tryAcquire(key, 1) > 0);
+    }
+
+    @Test
+    public void neverGrantsMoreThanTheBurstAndTakesNothingWhenRejected() {
+        String key = "over";
+        assertTrue(limiter.tryAcquire(key, limiter.getBurst() + 1) > 0);
+
+        // The rejected request took no tokens, so the whole burst is still there.
+        assertEquals(0L, limiter.tryAcquire(key, limiter.getBurst()));
+    }
+
+    @Test
+    public void keysHaveTheirOwnBuckets() {
+        assertEquals(0L, limiter.tryAcquire("first", limiter.getBurst()));
+        assertEquals(0L, limiter.tryAcquire("second", 1));
+    }
+}
@@ -0,0 +1,104 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests that a batch of toggles keeps only the votes that change and that the store applies all of them. */
+public final class VoteBatchTest {
+
+    private final LocalServiceTestHelper helper = new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+    private DatastoreCommentStore store;
+
+    @Before
+    public void setUp() {
+        helper.setUp();
+        VoteCounter.clearCache();
+        store = new DatastoreCommentStore();
+    }
+
+    @After
+    public void tearDown() {
+        helper.tearDown();
+    }
+
+    @Test
+    public void togglingTwiceCancelsOut() {
+        VoteBatch batch = new VoteBatch();
+        batch.toggle(1, true);
+        batch.toggle(1, true);
+
+        assertTrue(batch.isEmpty());
+        assertFalse(batch.isLikeToggled(1));
+    }
+
+    @Test
+    public void keepsBothThumbsInTheOrderTheyCame() {
+        VoteBatch batch = new VoteBatch();
+        batch.toggle(2, false);
+        batch.toggle(1, true);
+        batch.toggle(2, true);
+
+        assertEquals(Arrays.asList(2L, 1L), batch.getCommentIds());
+        assertTrue(batch.isLikeToggled(2));
+        assertTrue(batch.isUnlikeToggled(2));
+        assertTrue(batch.isLikeToggled(1));
+        assertFalse(batch.isUnlikeToggled(1));
+    }
+
+    @Test
+    public void storeAppliesBatchOverSeveralTransactions() {
+        // More comments than fit in one cross group transaction along with their votes and shards.
+        VoteBatch batch = new VoteBatch();
+        for (long id = 1; id <= 20; id++) {
+            store.add(CommentStatsTest.createComment(id));
+            batch.toggle(id, id % 2 == 0);
+        }
+
+        List<Entity> voted = store.vote("1", batch);
+        assertEquals(20, voted.size());
+
+        Map<Long, VoteCount> counts = store.getVotes(voted, -1);
+        for (long id = 1; id <= 20; id++) {
+            assertEquals(id % 2 == 0 ? 1L : 0L, counts.get(id).getThumbsup());
+            assertEquals(id % 2 == 0 ? 0L : 1L, counts.get(id).getThumbsdown());
+        }
+        assertEquals(20, store.getViewerVotes("1", batch.getCommentIds()).size());
+    }
+
+    @Test
+    public void storeSkipsMissingComments() {
+        store.add(CommentStatsTest.createComment(1));
+        VoteBatch batch = new VoteBatch();
+        batch.toggle(1, true);
+        batch.toggle(2, true);
+
+        List<Entity> voted = store.vote("1", batch);
+        assertEquals(1, voted.size());
+        assertEquals(1L, voted.get(0).getKey().getId());
+    }
+}
@@ -0,0 +1,117 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests that votes counted on the shards of a comment add up to the same counts before and after they are folded. */
+public final class VoteCounterTest {
+
+    // Apply every write right away, so that the query for pending shards sees the votes that were just counted.
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig().setApplyAllHighRepJobPolicy());
+    private DatastoreCommentStore store;
+
+    @Before
+    public void setUp() {
+        helper.setUp();
+        VoteCounter.clearCache();
+        store = new DatastoreCommentStore();
+    }
+
+    @After
+    public void tearDown() {
+        helper.tearDown();
+    }
+
+    @Test
+    public void votesOnShardsAreAddedToTheComment() {
+        long id = store.add(CommentStatsTest.createComment(1));
+
+        // The first vote on a comment is folded into it right away, the next ones wait on its shards.
+        assertTrue(store.vote("1", id, true));
+        assertTrue(store.vote("2", id, true));
+        assertTrue(store.vote("3", id, false));
+
+        Entity commentEntity = store.get(id);
+        assertEquals(1L, commentEntity.getProperty("thumbsup"));
+        assertEquals(0L, commentEntity.getProperty("thumbsdown"));
+        assertCounts(2, 1, commentEntity);
+    }
+
+    @Test
+    public void foldMovesShardsIntoTheComment() {
+        long id = store.add(CommentStatsTest.createComment(1));
+        store.vote("1", id, true);
+        store.vote("2", id, true);
+        store.vote("3", id, false);
+
+        assertEquals(1, store.foldPendingVotes(10));
+        Entity commentEntity = store.get(id);
+        assertEquals(2L, commentEntity.getProperty("thumbsup"));
+        assertEquals(1L, commentEntity.getProperty("thumbsdown"));
+        assertEquals(1L, commentEntity.getProperty("popularity"));
+        assertCounts(2, 1, commentEntity);
+
+        // Folding deleted the shards, so there is nothing left to fold.
+        assertEquals(0, store.foldPendingVotes(10));
+    }
+
+    @Test
+    public void votingTwiceTakesTheVoteBack() {
+        long id = store.add(CommentStatsTest.createComment(1));
+        store.vote("1", id, true);
+        store.vote("1", id, true);
+
+        assertCounts(0, 0, store.get(id));
+        assertTrue(store.getViewerVotes("1", Collections.singletonList(id)).isEmpty());
+    }
+
+    @Test
+    public void votesOnMissingCommentsAreIgnored() {
+        assertFalse(store.vote("1", 1, true));
+        assertEquals(0, store.foldPendingVotes(10));
+    }
+
+    @Test
+    public void deletedShardsAreNotCounted() {
+        long id = store.add(CommentStatsTest.createComment(1));
+        store.vote("1", id, true);
+        store.vote("2", id, true);
+        Entity commentEntity = store.get(id);
+
+        VoteCounter.deleteShards(Collections.singletonList(id));
+        assertCounts(1, 0, commentEntity);
+    }
+
+    // Checks the counts of the comment, read from the shards rather than from the cache.
+    private void assertCounts(long thumbsup, long thumbsdown, Entity commentEntity) {
+        VoteCounter.clearCache();
+        VoteCount count = store.getVotes(Collections.singletonList(commentEntity), -1)
+                .get(commentEntity.getKey().getId());
+        assertEquals(thumbsup, count.getThumbsup());
+        assertEquals(thumbsdown, count.getThumbsdown());
+    }
+}